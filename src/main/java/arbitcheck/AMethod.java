@@ -3,7 +3,6 @@ package arbitcheck;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class AMethod implements Function {
@@ -14,23 +13,25 @@ public class AMethod implements Function {
     }
 
     @Override
-    public Class<?> getContainingClass() {
-        return mMethod.getDeclaringClass();
+    public String getContainingClass() {
+        return mMethod.getDeclaringClass().getName();
     }
 
     @Override
-    public List<Class<?>> getInputTypes() {
-        List<Class<?>> types = new ArrayList<Class<?>>();
+    public List<String> getInputTypes() {
+        List<String> types = new ArrayList<String>();
         if (!Modifier.isStatic(mMethod.getModifiers())) {
-            types.add(mMethod.getDeclaringClass());
+            types.add(mMethod.getDeclaringClass().getName());
+        }
+        for (Class<?> c : mMethod.getParameterTypes()) {
+            types.add(c.getName());
         }
-        types.addAll(Arrays.asList(mMethod.getParameterTypes()));
         return types;
     }
 
     @Override
-    public Class<?> getOutputType() {
-        return mMethod.getReturnType();
+    public String getOutputType() {
+        return mMethod.getReturnType().getName();
     }
 
     @Override
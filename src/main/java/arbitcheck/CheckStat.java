@@ -13,28 +13,29 @@ import java.util.Map;
 import randoop.ExecutableSequence;
 import randoop.IEventListener;
 import randoop.NormalExecution;
-import randoop.RMethod;
 import randoop.StatementKind;
 
 public class CheckStat implements IEventListener {
     private int mMaxCheckCount;
     private Map<Method, Integer> mCheckCount;
     private Map<Method, Integer> mFailCount;
+    private Map<Method, Integer> mDiscardCount;
     private Map<Method, Map<String, Integer>> mLabelsForMethod;
 
     public CheckStat(int maxCheckCount, List<StatementKind> model) {
         mMaxCheckCount = maxCheckCount;
         mCheckCount = new HashMap<Method, Integer>();
         mFailCount = new HashMap<Method, Integer>();
+        mDiscardCount = new HashMap<Method, Integer>();
         mLabelsForMethod = new HashMap<Method, Map<String, Integer>>();
         for (StatementKind s : model) {
-            if (s instanceof RMethod) {
-                Method m = ((RMethod) s).getMethod();
-                if (m.getAnnotation(Check.class) != null) {
-                    mCheckCount.put(m, 0);
-                    mFailCount.put(m, 0);
-                    mLabelsForMethod.put(m, new HashMap<String, Integer>());
-                }
+            Property property = Property.of(s);
+            if (property != null) {
+                Method m = property.getMethod();
+                mCheckCount.put(m, 0);
+                mFailCount.put(m, 0);
+                mDiscardCount.put(m, 0);
+                mLabelsForMethod.put(m, new HashMap<String, Integer>());
             }
         }
     }
@@ -53,23 +54,31 @@ public class CheckStat implements IEventListener {
     }
 
     @Override
-    public void generationStepPost(ExecutableSequence s) {
+    public synchronized void generationStepPost(ExecutableSequence s) {
         if (s == null || s.sequence == null) {
             return;
         }
-        if (!SequenceUtil.isChecked(s.sequence)
-                || SequenceUtil.didViolateAssumption(s)) {
+        Verdict verdict = SequenceUtil.verdict(s);
+        if (verdict == Verdict.NOT_A_CHECK) {
             return;
         }
 
-        Method m = ((RMethod) s.sequence.getLastStatement()).getMethod();
+        Method m = Property.of(s.sequence.getLastStatement()).getMethod();
+        if (verdict == Verdict.DISCARD) {
+            mDiscardCount.put(m, mDiscardCount.get(m) + 1);
+            return;
+        }
         mCheckCount.put(m, mCheckCount.get(m) + 1);
-        if (!SequenceUtil.isSuccessful(s)) {
+        if (verdict == Verdict.FAIL) {
             mFailCount.put(m, mFailCount.get(m) + 1);
         }
         for (int i = 0; i < s.sequence.size(); i++) {
             if (s.sequence.getStatementKind(i) instanceof RMonitoring) {
                 NormalExecution r = (NormalExecution) s.getResult(i);
+                if (!(r.getRuntimeValue() instanceof CheckMonitor)) {
+                    // not available, e.g. when a child JVM died (see --fork)
+                    continue;
+                }
                 CheckMonitor monitoring = (CheckMonitor) r.getRuntimeValue();
                 String label = monitoring.getLabel();
                 Map<String, Integer> labels = mLabelsForMethod.get(m);
@@ -88,7 +97,7 @@ public class CheckStat implements IEventListener {
     }
 
     @Override
-    public boolean stopGeneration() {
+    public synchronized boolean stopGeneration() {
         for (int c : mCheckCount.values()) {
             if (c < mMaxCheckCount)
                 return false;
@@ -96,18 +105,21 @@ public class CheckStat implements IEventListener {
         return true;
     }
 
-    public void report(OutputStream s) {
+    public synchronized void report(OutputStream s) {
         PrintStream ps = new PrintStream(s);
         ps.println("");
         ps.println("# Results ");
         for (Method m : mCheckCount.keySet()) {
             int total = mCheckCount.get(m);
             int failed = mFailCount.get(m);
+            int discarded = mDiscardCount.get(m);
+            String discardNote = discarded == 0 ? "" : " (" + discarded
+                    + " discarded)";
             if (failed != 0) {
-                ps.println(m.getName() + ": Failed " + failed + " tests out of " + total + " tests.");
+                ps.println(m.getName() + ": Failed " + failed + " tests out of " + total + " tests." + discardNote);
             }
             else {
-                ps.println(m.getName() + ": OK, passed " + total + " tests.");
+                ps.println(m.getName() + ": OK, passed " + total + " tests." + discardNote);
             }
 
             final Map<String, Integer> labels = mLabelsForMethod.get(m);
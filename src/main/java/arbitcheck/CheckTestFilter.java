@@ -10,10 +10,6 @@ public class CheckTestFilter implements ITestFilter {
         if (s == null || s.sequence == null) {
             return false;
         }
-        if (!SequenceUtil.isChecked(s.sequence)
-                || SequenceUtil.didViolateAssumption(s)) {
-            return false;
-        }
-        return !SequenceUtil.isSuccessful(s);
+        return SequenceUtil.verdict(s) == Verdict.FAIL;
     }
 }
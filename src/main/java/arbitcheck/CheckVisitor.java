@@ -1,6 +1,8 @@
 package arbitcheck;
 
+import randoop.ExceptionalExecution;
 import randoop.ExecutableSequence;
+import randoop.ExecutionOutcome;
 import randoop.ExecutionVisitor;
 
 public class CheckVisitor implements ExecutionVisitor {
@@ -14,16 +16,22 @@ public class CheckVisitor implements ExecutionVisitor {
 
     @Override
     public void visitAfter(ExecutableSequence sequence, int i) {
+        // Classify an exception as soon as it is thrown: if it rejects the
+        // input, the sequence is discarded and its execution stops here.
+        ExecutionOutcome outcome = sequence.getResult(i);
+        if (outcome instanceof ExceptionalExecution
+                && SequenceUtil.isAssumptionViolation(((ExceptionalExecution) outcome)
+                        .getException())
+                && SequenceUtil.isChecked(sequence.sequence)) {
+            sequence.setVerdict(Verdict.DISCARD);
+            return;
+        }
         if (i != sequence.sequence.size() - 1) {
             return;
         }
-        if (SequenceUtil.isChecked(sequence.sequence)) {
-            if (SequenceUtil.didViolateAssumption(sequence))
-                return;
-            if (!SequenceUtil.isSuccessful(sequence)) {
-                PropertyCheck check = new PropertyCheck();
-                sequence.addCheck(sequence.sequence.size() - 1, check, false);
-            }
+        if (SequenceUtil.verdict(sequence) == Verdict.FAIL) {
+            PropertyCheck check = new PropertyCheck();
+            sequence.addCheck(sequence.sequence.size() - 1, check, false);
         }
     }
 }
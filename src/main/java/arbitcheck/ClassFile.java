@@ -0,0 +1,381 @@
+package arbitcheck;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a class file that ClassTree needs: the class's supertypes and
+ * its methods and constructors, with their types. Reading a class file this
+ * way does not load the class, so none of its static initializers run.
+ * <p>
+ * Type names are in the form returned by {@link Class#getName()}: "int",
+ * "java.lang.String", "[I", "[Ljava.lang.String;".
+ */
+public final class ClassFile {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    // ACC_MODULE: the class file of a module-info.
+    private static final int ACC_MODULE = 0x8000;
+
+    private final String mName;
+    private final String mSuperName;
+    private final List<String> mInterfaceNames;
+    private final int mAccess;
+    private final List<Member> mMembers;
+
+    ClassFile(String name, String superName,
+            List<String> interfaceNames, int access, List<Member> members) {
+        mName = name;
+        mSuperName = superName;
+        mInterfaceNames = interfaceNames;
+        mAccess = access;
+        mMembers = members;
+    }
+
+    /** The name of the class. */
+    public String getName() {
+        return mName;
+    }
+
+    /** The name of the superclass, or null for java.lang.Object. */
+    public String getSuperName() {
+        return mSuperName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return mInterfaceNames;
+    }
+
+    /** The access flags of the class, as in {@link Modifier}. */
+    public int getModifiers() {
+        return mAccess;
+    }
+
+    public boolean isInterface() {
+        return Modifier.isInterface(mAccess);
+    }
+
+    /** Whether the class file describes a module rather than a class. */
+    public boolean isModule() {
+        return (mAccess & ACC_MODULE) != 0;
+    }
+
+    /** The methods and constructors declared in the class. */
+    public List<Member> getMembers() {
+        return mMembers;
+    }
+
+    /**
+     * A method or constructor declared in a class file.
+     */
+    public static final class Member implements Function {
+        private final String mOwner;
+        private final int mAccess;
+        private final String mName;
+        private final String mDescriptor;
+        private final List<String> mParameterTypes;
+        private final String mReturnType;
+        private final List<String> mExceptionTypes;
+        // Members are looked up in hash maps a lot.
+        private final int mHashCode;
+
+        Member(String owner, int access, String name, String descriptor,
+                List<String> exceptionTypes) {
+            mOwner = owner;
+            mAccess = access;
+            mName = name;
+            mDescriptor = descriptor;
+            List<String> parameterTypes = new ArrayList<String>();
+            int i = 1; // skip '('
+            while (descriptor.charAt(i) != ')') {
+                int end = typeEnd(descriptor, i);
+                parameterTypes.add(typeName(descriptor.substring(i, end)));
+                i = end;
+            }
+            mParameterTypes = Collections.unmodifiableList(parameterTypes);
+            mReturnType = typeName(descriptor.substring(i + 1));
+            mExceptionTypes = exceptionTypes;
+            mHashCode = (owner.hashCode() * 31 + name.hashCode()) * 31
+                    + descriptor.hashCode();
+        }
+
+        /** The access flags of the method, as in {@link Modifier}. */
+        public int getModifiers() {
+            return mAccess;
+        }
+
+        public String getDescriptor() {
+            return mDescriptor;
+        }
+
+        public boolean isConstructor() {
+            return "<init>".equals(mName);
+        }
+
+        public boolean isStatic() {
+            return Modifier.isStatic(mAccess);
+        }
+
+        /** The method's name and descriptor, which identify it in its class. */
+        public String getSignature() {
+            return mName + mDescriptor;
+        }
+
+        public List<String> getParameterTypes() {
+            return mParameterTypes;
+        }
+
+        public List<String> getExceptionTypes() {
+            return mExceptionTypes;
+        }
+
+        @Override
+        public String getContainingClass() {
+            return mOwner;
+        }
+
+        @Override
+        public List<String> getInputTypes() {
+            if (isStatic() || isConstructor())
+                return mParameterTypes;
+            List<String> types = new ArrayList<String>(
+                    mParameterTypes.size() + 1);
+            types.add(mOwner);
+            types.addAll(mParameterTypes);
+            return types;
+        }
+
+        @Override
+        public String getOutputType() {
+            return isConstructor() ? mOwner : mReturnType;
+        }
+
+        @Override
+        public String getName() {
+            return isConstructor() ? mOwner : mName;
+        }
+
+        @Override
+        public boolean isPublic() {
+            return Modifier.isPublic(mAccess);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Member))
+                return false;
+            Member other = (Member) obj;
+            return mOwner.equals(other.mOwner) && mName.equals(other.mName)
+                    && mDescriptor.equals(other.mDescriptor);
+        }
+
+        @Override
+        public String toString() {
+            return mOwner + "." + getSignature();
+        }
+    }
+
+    /**
+     * Reads the class file at the given URL, typically a class loader
+     * resource.
+     */
+    public static ClassFile read(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            return read(new BufferedInputStream(in));
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a class file. Throws IOException if the stream does not contain a
+     * well-formed class file.
+     */
+    public static ClassFile read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC)
+            throw new IOException("not a class file");
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        // The constant pool. Only UTF8 and class entries are kept.
+        int poolSize = in.readUnsignedShort();
+        String[] utf8 = new String[poolSize];
+        int[] classNameIndex = new int[poolSize];
+        for (int i = 1; i < poolSize; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+            case 1: // Utf8
+                utf8[i] = in.readUTF();
+                break;
+            case 7: // Class
+                classNameIndex[i] = in.readUnsignedShort();
+                break;
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                in.skipBytes(2);
+                break;
+            case 15: // MethodHandle
+                in.skipBytes(3);
+                break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                in.skipBytes(4);
+                break;
+            case 5: // Long
+            case 6: // Double
+                in.skipBytes(8);
+                i++; // takes two entries
+                break;
+            default:
+                throw new IOException("bad constant pool tag " + tag);
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        String name = className(utf8, classNameIndex, in.readUnsignedShort());
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? null : className(utf8,
+                classNameIndex, superIndex);
+        int interfaceCount = in.readUnsignedShort();
+        List<String> interfaces = new ArrayList<String>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(className(utf8, classNameIndex,
+                    in.readUnsignedShort()));
+        }
+
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            in.skipBytes(6); // access, name, descriptor
+            skipAttributes(in);
+        }
+
+        int methodCount = in.readUnsignedShort();
+        List<Member> members = new ArrayList<Member>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            int methodAccess = in.readUnsignedShort();
+            String methodName = utf8[in.readUnsignedShort()];
+            String descriptor = utf8[in.readUnsignedShort()];
+            List<String> exceptions = Collections.emptyList();
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                String attributeName = utf8[in.readUnsignedShort()];
+                int length = in.readInt();
+                if ("Exceptions".equals(attributeName)) {
+                    int count = in.readUnsignedShort();
+                    exceptions = new ArrayList<String>(count);
+                    for (int k = 0; k < count; k++) {
+                        exceptions.add(className(utf8, classNameIndex,
+                                in.readUnsignedShort()));
+                    }
+                }
+                else {
+                    skipFully(in, length);
+                }
+            }
+            if ("<clinit>".equals(methodName))
+                continue;
+            members.add(new Member(name, methodAccess, methodName,
+                    descriptor, exceptions));
+        }
+        // The class's own attributes are not needed.
+
+        return new ClassFile(name, superName,
+                Collections.unmodifiableList(interfaces), access,
+                Collections.unmodifiableList(members));
+    }
+
+    private static String className(String[] utf8, int[] classNameIndex,
+            int index) {
+        String internalName = utf8[classNameIndex[index]];
+        // Array classes are named by their descriptors.
+        return internalName.replace('/', '.');
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.skipBytes(2);
+            skipFully(in, in.readInt());
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length)
+            throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0)
+                throw new IOException("truncated class file");
+            length -= skipped;
+        }
+    }
+
+    // The index just past the type descriptor starting at the given index.
+    private static int typeEnd(String descriptor, int start) {
+        int i = start;
+        while (descriptor.charAt(i) == '[')
+            i++;
+        if (descriptor.charAt(i) == 'L')
+            return descriptor.indexOf(';', i) + 1;
+        return i + 1;
+    }
+
+    /**
+     * Converts a type descriptor ("I", "Ljava/lang/String;", "[I") to the
+     * name of the type as returned by {@link Class#getName()}.
+     */
+    static String typeName(String descriptor) {
+        switch (descriptor.charAt(0)) {
+        case 'Z':
+            return "boolean";
+        case 'B':
+            return "byte";
+        case 'C':
+            return "char";
+        case 'S':
+            return "short";
+        case 'I':
+            return "int";
+        case 'J':
+            return "long";
+        case 'F':
+            return "float";
+        case 'D':
+            return "double";
+        case 'V':
+            return "void";
+        case 'L':
+            return descriptor.substring(1, descriptor.length() - 1).replace(
+                    '/', '.');
+        case '[':
+            return descriptor.replace('/', '.');
+        default:
+            throw new IllegalArgumentException("bad descriptor " + descriptor);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package arbitcheck;
+
+/**
+ * Finds the class files that a ClassTree is built from.
+ */
+public interface ClassFileSource {
+    /**
+     * The class file of the named class, or null if there is none. The name
+     * is as returned by {@link Class#getName()}, and never that of a
+     * primitive type or array.
+     */
+    public ClassFile find(String className);
+}
@@ -2,108 +2,385 @@ package arbitcheck;
 
 import java.io.IOException;
 import java.io.File;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class ClassTree {
-    private final Map<Class<?>, Node> mNodes;
+    private final Map<String, Node> mNodes;
+    private final ClassFileSource mSource;
+    // The names of the classes, by node ID.
+    private String[] mNames;
+    // The public functions of all classes, by output type. Built on the
+    // first getProducers.
+    private Map<String, List<Function>> mProducers;
 
-    public ClassTree(List<String> classNames) {
-        mNodes = new HashMap<Class<?>, ClassTree.Node>();
+    /**
+     * Builds the tree of the given classes and of the classes their public
+     * members refer to. Class files are taken from the given source; no class
+     * is loaded.
+     */
+    public ClassTree(List<String> classNames, ClassFileSource source) {
+        mNodes = new HashMap<String, ClassTree.Node>();
+        mSource = source;
         read(classNames);
         build();
     }
 
+    private static ClassFileSource loaderSource(final ClassLoader loader) {
+        return new ClassFileSource() {
+            @Override
+            public ClassFile find(String className) {
+                URL url = loader.getResource(resourceName(className));
+                if (url == null)
+                    return null;
+                try {
+                    return ClassFile.read(url);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }
+        };
+    }
+
+    static String resourceName(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
     private void read(List<String> classNames) {
+        LinkedList<String> queue = new LinkedList<String>();
         for (String name : classNames) {
-            try {
-                Class<?> clazz = Class.forName(name);
-                addClass(clazz);
-            }
-            catch (ClassNotFoundException e) {
-                e.printStackTrace();
+            if (mNodes.containsKey(name))
+                continue;
+            ClassFile file = readClassFile(name);
+            // Skip entries that are not loadable classes, such as module-info
+            // or the classes under META-INF/versions of a multi-release jar.
+            if (file == null || file.isModule() || !name.equals(file.getName()))
+                continue;
+            mNodes.put(name, new Node(name, file));
+            queue.add(name);
+        }
+        while (!queue.isEmpty()) {
+            Node node = mNodes.get(queue.poll());
+            for (String name : getReferencedTypes(node)) {
+                if (!mNodes.containsKey(name)) {
+                    mNodes.put(name, new Node(name, readClassFile(name)));
+                    queue.add(name);
+                }
             }
         }
     }
 
-    private void addClass(Class<?> clazz) {
-        if (clazz == null)
-            return;
-        if (!mNodes.containsKey(clazz)) {
-            mNodes.put(clazz, new Node(clazz));
-            addClass(clazz.getSuperclass());
-            for (Class<?> i : clazz.getInterfaces())
-                addClass(i);
-            for (Constructor<?> m : clazz.getConstructors()) {
-                for (Class<?> c : m.getParameterTypes())
-                    addClass(c);
-                for (Class<?> c : m.getExceptionTypes())
-                    addClass(c);
-            }
-            for (Method m : clazz.getMethods()) {
-                addClass(m.getReturnType());
-                for (Class<?> c : m.getParameterTypes())
-                    addClass(c);
-                for (Class<?> c : m.getExceptionTypes())
-                    addClass(c);
-            }
+    // The supertypes of the node's class and the types its public members
+    // mention. Members inherited from supertypes are covered when the
+    // supertypes themselves are visited.
+    private List<String> getReferencedTypes(Node node) {
+        List<String> types = new ArrayList<String>(getSupertypes(node));
+        ClassFile file = node.getClassFile();
+        if (file == null)
+            return types;
+        for (ClassFile.Member m : file.getMembers()) {
+            if (!m.isPublic())
+                continue;
+            if (!m.isConstructor())
+                types.add(m.getOutputType());
+            types.addAll(m.getParameterTypes());
+            types.addAll(m.getExceptionTypes());
         }
+        return types;
+    }
+
+    private static List<String> getSupertypes(Node node) {
+        if (node.isArray())
+            return ARRAY_SUPERTYPES;
+        ClassFile file = node.getClassFile();
+        if (file == null)
+            return Collections.emptyList();
+        List<String> supertypes = new ArrayList<String>();
+        // The class file of an interface names java.lang.Object as its
+        // superclass, but an interface does not extend it.
+        if (file.getSuperName() != null && !file.isInterface())
+            supertypes.add(file.getSuperName());
+        supertypes.addAll(file.getInterfaceNames());
+        return supertypes;
+    }
+
+    private static final List<String> ARRAY_SUPERTYPES = Arrays.asList(
+            "java.lang.Object", "java.lang.Cloneable", "java.io.Serializable");
+
+    // Null for primitive types and arrays, and for classes whose class files
+    // are missing or unreadable; these become leaves of the tree.
+    private ClassFile readClassFile(String name) {
+        if (name.startsWith("[") || PRIMITIVES.contains(name))
+            return null;
+        return mSource.find(name);
     }
 
     private void build() {
+        mNames = new String[mNodes.size()];
+        int id = 0;
         for (Node node : mNodes.values()) {
-            Class<?> clazz = node.getClazz();
-            if (clazz.getSuperclass() != null) {
-                Node parent = mNodes.get(clazz.getSuperclass());
-                parent.addChild(node);
-                node.addParent(parent);
-            }
-            for (Class<?> ifx : clazz.getInterfaces()) {
-                Node parent = mNodes.get(ifx);
+            node.mId = id;
+            mNames[id] = node.mName;
+            id++;
+            for (String name : getSupertypes(node)) {
+                Node parent = mNodes.get(name);
                 parent.addChild(node);
                 node.addParent(parent);
             }
         }
     }
 
-    public Set<Class<?>> getAllClasses() {
+    public Set<String> getAllClasses() {
         return mNodes.keySet();
     }
 
-    public Set<Class<?>> getAllChildren(Class<?> clazz, boolean containsThis) {
-        if (!mNodes.containsKey(clazz))
-            throw new IllegalArgumentException("Unknown class "
-                    + clazz.getName());
-        return mNodes.get(clazz).getAllChildren(containsThis);
+    /**
+     * Whether the class is in the tree: it is in the classpath, or the public
+     * members of a class in the tree refer to it.
+     */
+    public boolean contains(String className) {
+        return mNodes.containsKey(className);
+    }
+
+    /**
+     * The class and all its subtypes in the tree. The set is read-only, and
+     * computed once per class.
+     */
+    public Set<String> getAllChildren(String className, boolean containsThis) {
+        Node node = getNode(className);
+        return new ClosureSet(allChildren(node), containsThis ? -1
+                : node.mId);
+    }
+
+    /**
+     * The class and all its supertypes in the tree. The set is read-only, and
+     * computed once per class.
+     */
+    public Set<String> getAllParents(String className, boolean containsThis) {
+        Node node = getNode(className);
+        return new ClosureSet(allParents(node), containsThis ? -1
+                : node.mId);
+    }
+
+    private int[] allChildren(Node node) {
+        if (node.mAllChildren == null) {
+            List<int[]> closures = new ArrayList<int[]>();
+            for (Node child : node.mChildren)
+                closures.add(allChildren(child));
+            node.mAllChildren = union(node.mId, closures);
+        }
+        return node.mAllChildren;
+    }
+
+    private int[] allParents(Node node) {
+        if (node.mAllParents == null) {
+            List<int[]> closures = new ArrayList<int[]>();
+            for (Node parent : node.mParents)
+                closures.add(allParents(parent));
+            node.mAllParents = union(node.mId, closures);
+        }
+        return node.mAllParents;
     }
 
-    public Set<Class<?>> getAllParents(Class<?> clazz, boolean containsThis) {
-        if (!mNodes.containsKey(clazz))
-            throw new IllegalArgumentException("Unknown class "
-                    + clazz.getName());
-        return mNodes.get(clazz).getAllParents(containsThis);
+    // The sorted IDs in any of the given sorted arrays, and the given ID.
+    private static int[] union(int id, List<int[]> closures) {
+        if (closures.isEmpty())
+            return new int[] { id };
+        // A class with one supertype (or subtype) shares most of its closure
+        // with it; no need to sort again.
+        if (closures.size() == 1) {
+            int[] closure = closures.get(0);
+            int[] ids = new int[closure.length + 1];
+            int i = 0;
+            while (i < closure.length && closure[i] < id) {
+                ids[i] = closure[i];
+                i++;
+            }
+            ids[i] = id;
+            System.arraycopy(closure, i, ids, i + 1, closure.length - i);
+            return ids;
+        }
+        int size = 1;
+        for (int[] closure : closures)
+            size += closure.length;
+        int[] all = new int[size];
+        all[0] = id;
+        int n = 1;
+        for (int[] closure : closures) {
+            System.arraycopy(closure, 0, all, n, closure.length);
+            n += closure.length;
+        }
+        Arrays.sort(all);
+        // remove duplicates
+        n = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (n == 0 || all[i] != all[n - 1])
+                all[n++] = all[i];
+        }
+        return n == all.length ? all : Arrays.copyOf(all, n);
     }
 
-    public static List<Function> getFunctions(Class<?> clazz) {
-        List<Function> functions = new ArrayList<Function>();
-        for (Constructor<?> constructor : clazz.getConstructors()) {
-            functions.add(new AConstructor(constructor));
+    // The classes with the given sorted IDs, except the excluded ID (-1 for
+    // none).
+    private final class ClosureSet extends AbstractSet<String> {
+        private final int[] mIds;
+        private final int mExcluded;
+        private final int mSize;
+
+        ClosureSet(int[] ids, int excluded) {
+            mIds = ids;
+            mExcluded = excluded;
+            mSize = excluded >= 0 && Arrays.binarySearch(ids, excluded) >= 0
+                    ? ids.length - 1 : ids.length;
+        }
+
+        @Override
+        public int size() {
+            return mSize;
         }
-        for (Method method : clazz.getMethods()) {
-            functions.add(new AMethod(method));
+
+        @Override
+        public boolean contains(Object o) {
+            Node node = mNodes.get(o);
+            return node != null && node.mId != mExcluded
+                    && Arrays.binarySearch(mIds, node.mId) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int mNext = skip(0);
+
+                private int skip(int i) {
+                    return i < mIds.length && mIds[i] == mExcluded ? i + 1 : i;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return mNext < mIds.length;
+                }
+
+                @Override
+                public String next() {
+                    if (mNext >= mIds.length)
+                        throw new NoSuchElementException();
+                    String name = mNames[mIds[mNext]];
+                    mNext = skip(mNext + 1);
+                    return name;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    private Node getNode(String className) {
+        Node node = mNodes.get(className);
+        if (node == null)
+            throw new IllegalArgumentException("Unknown class " + className);
+        return node;
+    }
+
+    /**
+     * The public constructors and methods, of any class in the tree, whose
+     * output is exactly the given type.
+     */
+    public List<Function> getProducers(String type) {
+        if (mProducers == null) {
+            mProducers = new HashMap<String, List<Function>>();
+            for (Node node : mNodes.values()) {
+                ClassFile file = node.getClassFile();
+                if (file == null)
+                    continue;
+                for (ClassFile.Member m : file.getMembers()) {
+                    if (!m.isPublic())
+                        continue;
+                    List<Function> functions = mProducers.get(m
+                            .getOutputType());
+                    if (functions == null) {
+                        functions = new ArrayList<Function>();
+                        mProducers.put(m.getOutputType(), functions);
+                    }
+                    functions.add(m);
+                }
+            }
+        }
+        List<Function> functions = mProducers.get(type);
+        return functions == null ? Collections.<Function> emptyList()
+                : functions;
+    }
+
+    /**
+     * The public constructors and methods of the class, the latter including
+     * those it inherits, like {@link Class#getConstructors()} and
+     * {@link Class#getMethods()}.
+     */
+    public List<Function> getFunctions(String className) {
+        Node node = getNode(className);
+        if (node.mFunctions == null) {
+            List<Function> functions = new ArrayList<Function>();
+            ClassFile file = node.getClassFile();
+            if (file != null) {
+                for (ClassFile.Member m : file.getMembers()) {
+                    if (m.isPublic() && m.isConstructor())
+                        functions.add(m);
+                }
+            }
+            addMethods(node, true, new HashSet<String>(), functions);
+            node.mFunctions = Collections.unmodifiableList(functions);
+        }
+        return node.mFunctions;
+    }
+
+    // Adds the public methods of the node's class and its supertypes, except
+    // those overridden by methods already seen. Interfaces do not inherit
+    // from java.lang.Object, nor classes the static methods of interfaces.
+    private void addMethods(Node node, boolean isStart, Set<String> seen,
+            List<Function> functions) {
+        ClassFile file = node.getClassFile();
+        if (file != null) {
+            for (ClassFile.Member m : file.getMembers()) {
+                if (!m.isPublic() || m.isConstructor())
+                    continue;
+                if (!isStart && file.isInterface() && m.isStatic())
+                    continue;
+                if (seen.add(m.getSignature()))
+                    functions.add(m);
+            }
+        }
+        for (String name : getSupertypes(node)) {
+            addMethods(mNodes.get(name), false, seen, functions);
         }
-        return functions;
     }
 
     public static boolean isInstantiatable(Class<?> clazz) {
@@ -116,104 +393,294 @@ public class ClassTree {
         return true;
     }
 
-    public static boolean hasLiteral(Class<?> clazz) {
-        if (clazz.isArray()) {
-            return hasLiteral(clazz.getComponentType());
-        }
-        if (clazz.isPrimitive())
-            return true;
-        if (Boolean.class.equals(clazz))
-            return true;
-        if (Byte.class.equals(clazz))
-            return true;
-        if (Short.class.equals(clazz))
-            return true;
-        if (Integer.class.equals(clazz))
-            return true;
-        if (Long.class.equals(clazz))
-            return true;
-        if (Character.class.equals(clazz))
-            return true;
-        if (Float.class.equals(clazz))
-            return true;
-        if (Double.class.equals(clazz))
-            return true;
-        // not true primitive, but randoop knows how to create them
-        if (String.class.equals(clazz))
-            return true;
-        if (Object.class.equals(clazz))
-            return true;
-        return false;
+    public static boolean hasLiteral(String className) {
+        if (className.startsWith("[")) {
+            return hasLiteral(ClassFile.typeName(className.substring(1)));
+        }
+        return PRIMITIVES.contains(className) || LITERALS.contains(className);
     }
 
+    private static final Set<String> PRIMITIVES = new HashSet<String>(
+            Arrays.asList("boolean", "byte", "char", "short", "int", "long",
+                    "float", "double", "void"));
+
+    private static final Set<String> LITERALS = new HashSet<String>(
+            Arrays.asList("java.lang.Boolean", "java.lang.Byte",
+                    "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+                    "java.lang.Character", "java.lang.Float",
+                    "java.lang.Double",
+                    // not true primitive, but randoop knows how to create them
+                    "java.lang.String", "java.lang.Object"));
+
+    /**
+     * Builds the tree of the classes in the given classpath without loading
+     * them, so that only the classes finally chosen as test targets are
+     * loaded (and initialized) later.
+     */
     public static ClassTree fromClasspath(String classpath) {
-        List<String> classNames = new ArrayList<String>();
-        for (String path : classpath.split(":")) {
-            classNames.addAll(listClasses(path));
+        List<String> paths = Arrays.asList(classpath.split(":"));
+        return new ClassTree(listClasses(paths),
+                loaderSource(classpathLoader(paths)));
+    }
+
+    /**
+     * Like {@link #fromClasspath(String)}, but takes the class files of the
+     * classpath entries that have not changed since the last run from the
+     * given cache file, and updates it.
+     */
+    public static ClassTree fromClasspath(String classpath, File cacheFile) {
+        List<String> paths = Arrays.asList(classpath.split(":"));
+        ClasspathCache cache = new ClasspathCache(cacheFile,
+                classpathLoader(paths));
+        ClassTree tree = new ClassTree(cache.scan(paths), cache);
+        cache.save();
+        return tree;
+    }
+
+    // A loader for finding the class files of the given classpath entries
+    // and of the classes they refer to, which it never loads.
+    private static ClassLoader classpathLoader(List<String> paths) {
+        List<URL> urls = new ArrayList<URL>();
+        for (String path : paths) {
+            try {
+                urls.add(new File(path).toURI().toURL());
+            }
+            catch (MalformedURLException e) {
+                e.printStackTrace();
+            }
         }
-        return new ClassTree(classNames);
+        return new URLClassLoader(urls.toArray(new URL[0]),
+                ClassTree.class.getClassLoader());
     }
 
     public static List<String> listClasses(String path) {
+        return listClasses(Collections.singletonList(path));
+    }
+
+    /**
+     * Lists the classes in the given jars and directories. The jars, and the
+     * subdirectories of the directories, are listed concurrently, by as many
+     * threads as there are processors.
+     */
+    public static List<String> listClasses(List<String> paths) {
+        ExecutorService executor = newPool("class lister");
+        List<String> classes = new ArrayList<String>();
         try {
-            if (path.endsWith(".jar")) {
-                return listClasses(new JarFile(path));
+            for (Listing listing : list(paths, false, executor)) {
+                classes.addAll(listing.classes);
             }
-            else {
-                return listClasses(new File(path), null);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return classes;
+    }
+
+    // Lists the given jars and directories on the given pool, and returns
+    // the listings of the jars and of every level of the directories. If
+    // withFiles is true, the listings of directories also record the class
+    // files found in them.
+    static List<Listing> list(List<String> paths, boolean withFiles,
+            ExecutorService executor) {
+        // Tasks never wait for each other: a directory task returns its
+        // subdirectories, and this thread submits them as new tasks.
+        CompletionService<Listing> listings =
+                new ExecutorCompletionService<Listing>(executor);
+        List<Listing> result = new ArrayList<Listing>();
+        try {
+            int pending = 0;
+            for (String path : paths) {
+                listings.submit(new ListingTask(path, new File(path), null,
+                        withFiles));
+                pending++;
+            }
+            while (pending > 0) {
+                Listing listing = await(listings.take());
+                pending--;
+                result.add(listing);
+                for (ListingTask task : listing.subdirectories) {
+                    listings.submit(task);
+                    pending++;
+                }
             }
         }
-        catch (IOException e) {
-            e.printStackTrace();
-            return Collections.emptyList();
+        catch (InterruptedException e) {
+            throw new IllegalStateException(
+                    "Interrupted while listing classes.");
         }
+        return result;
     }
 
-    public static List<String> listClasses(JarFile jar) throws IOException {
-        List<String> classes = new ArrayList<String>();
-        Enumeration<JarEntry> en = jar.entries();
-        while (en.hasMoreElements()) {
-            JarEntry entry = en.nextElement();
-            String name = entry.getName();
-            if (name.endsWith(".class")) {
-                classes.add(name.substring(0,
-                        name.length() - ".class".length())
-                        .replace('/', '.'));
+    // A pool of daemon threads, one per processor, for reading the classpath.
+    static ExecutorService newPool(final String threadName) {
+        return Executors.newFixedThreadPool(Runtime.getRuntime()
+                .availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
             }
+        });
+    }
+
+    // The result of a task of such a pool, rethrowing what the task threw.
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(
+                    "Interrupted while reading the classpath.");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
         }
-        return classes;
     }
 
-    public static List<String> listClasses(File file, String name) throws IOException {
-        List<String> classes = new ArrayList<String>();
-        if (file.isDirectory()) {
-            for (File child : file.listFiles()) {
-                String childName =
-                    (name == null ? "" : name + ".") + child.getName();
-                classes.addAll(listClasses(child, childName));
+    // The classes found in a jar or one level of a directory, and the
+    // subdirectories of the latter, which are left to other tasks. The root
+    // is the classpath entry the listing belongs to.
+    static class Listing {
+        final String root;
+        final List<String> classes = new ArrayList<String>();
+        // If asked for, the class files of a directory, in the order of
+        // classes.
+        final List<ListedFile> files = new ArrayList<ListedFile>();
+        final List<ListingTask> subdirectories = new ArrayList<ListingTask>();
+
+        Listing(String root) {
+            this.root = root;
+        }
+    }
+
+    // A class file found in a directory, with its path from the classpath
+    // entry (separated by '/'), and its size and modification time when it
+    // was listed.
+    static class ListedFile {
+        final String path;
+        final File file;
+        final long size;
+        final long modified;
+
+        ListedFile(String path, File file) {
+            this.path = path;
+            this.file = file;
+            this.size = file.length();
+            this.modified = file.lastModified();
+        }
+    }
+
+    // Lists a jar, or one level of a directory. The package is the package
+    // of the classes in the directory, null for a classpath entry.
+    private static class ListingTask implements Callable<Listing> {
+        private final String mRoot;
+        private final File mFile;
+        private final String mPackage;
+        private final boolean mWithFiles;
+
+        ListingTask(String root, File file, String pkg, boolean withFiles) {
+            mRoot = root;
+            mFile = file;
+            mPackage = pkg;
+            mWithFiles = withFiles;
+        }
+
+        @Override
+        public Listing call() {
+            Listing listing = new Listing(mRoot);
+            // Like the JVM, ignore classpath entries that do not exist.
+            if (!mFile.exists())
+                return listing;
+            try {
+                if (mPackage == null && mFile.getName().endsWith(".jar"))
+                    listJar(listing);
+                else
+                    listDirectory(listing);
             }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+            return listing;
         }
-        else {
-            if (name.endsWith(".class")) {
-                classes.add(name.substring(0, name.length() - ".class".length()));
+
+        // A ZipFile only reads the central directory; unlike a JarFile, it
+        // does not look for a manifest or signatures to verify.
+        private void listJar(Listing listing) throws IOException {
+            ZipFile zip = new ZipFile(mFile);
+            try {
+                Enumeration<? extends ZipEntry> en = zip.entries();
+                while (en.hasMoreElements()) {
+                    String name = en.nextElement().getName();
+                    if (name.endsWith(".class")) {
+                        listing.classes.add(name.substring(0,
+                                name.length() - ".class".length())
+                                .replace('/', '.'));
+                    }
+                }
+            }
+            finally {
+                zip.close();
+            }
+        }
+
+        private void listDirectory(Listing listing) throws IOException {
+            File[] children = mFile.listFiles();
+            if (children == null)
+                throw new IOException("cannot list " + mFile);
+            for (File child : children) {
+                String name = mPackage == null ? child.getName()
+                        : mPackage + "." + child.getName();
+                if (child.isDirectory()) {
+                    listing.subdirectories.add(new ListingTask(mRoot, child,
+                            name, mWithFiles));
+                }
+                else if (name.endsWith(".class")) {
+                    listing.classes.add(name.substring(0,
+                            name.length() - ".class".length()));
+                    if (mWithFiles) {
+                        String dir = mPackage == null ? "" : mPackage.replace(
+                                '.', '/') + "/";
+                        listing.files.add(new ListedFile(dir + child.getName(),
+                                child));
+                    }
+                }
             }
         }
-        return classes;
     }
 
     private static class Node {
-        private final Class<?> mClass;
+        private final String mName;
+        private final ClassFile mClassFile;
         private final Set<Node> mChildren;
         private final Set<Node> mParents;
+        // The class's functions, computed on the first getFunctions.
+        private List<Function> mFunctions;
+        // The node's index in mNames.
+        private int mId;
+        // The sorted IDs of the class and its subtypes, and of the class and
+        // its supertypes, computed when first asked for.
+        private int[] mAllChildren;
+        private int[] mAllParents;
 
-        public Node(Class<?> cls) {
-            mClass = cls;
+        public Node(String name, ClassFile classFile) {
+            mName = name;
+            mClassFile = classFile;
             mChildren = new HashSet<ClassTree.Node>();
             mParents = new HashSet<ClassTree.Node>();
         }
 
-        public Class<?> getClazz() {
-            return mClass;
+        public ClassFile getClassFile() {
+            return mClassFile;
+        }
+
+        public boolean isArray() {
+            return mName.startsWith("[");
         }
 
         public void addChild(Node node) {
@@ -224,22 +691,5 @@ public class ClassTree {
             mParents.add(node);
         }
 
-        public Set<Class<?>> getAllChildren(boolean containsThis) {
-            Set<Class<?>> classes = new HashSet<Class<?>>();
-            if (containsThis)
-                classes.add(mClass);
-            for (Node node : mChildren)
-                classes.addAll(node.getAllChildren(true));
-            return classes;
-        }
-
-        public Set<Class<?>> getAllParents(boolean containsThis) {
-            Set<Class<?>> classes = new HashSet<Class<?>>();
-            if (containsThis)
-                classes.add(mClass);
-            for (Node node : mParents)
-                classes.addAll(node.getAllParents(true));
-            return classes;
-        }
     }
 }
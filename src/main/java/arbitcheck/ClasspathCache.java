@@ -0,0 +1,608 @@
+package arbitcheck;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The class files of a classpath, kept in a file between runs so that a
+ * ClassTree can be built without reading the classpath again.
+ * <p>
+ * Each classpath entry is recorded with its size, modification time and
+ * content hash. A jar is reused if its size and modification time are
+ * unchanged, or failing that, if its hash is; a directory is reused if the
+ * paths, sizes and modification times of its class files hash the same. Only
+ * the entries that changed are read again. The class files of the JDK that
+ * the classpath refers to are kept too, for as long as the same JDK runs.
+ * <p>
+ * The contents of a directory's class files are not hashed, since that would
+ * mean reading them all on every run. A class file that is rewritten with
+ * the same size and modification time, as a copy that preserves times can
+ * do, is therefore not noticed; deleting the cache file forces a new scan.
+ * An entry that cannot be read is left out of the cache, so that it is read
+ * again next time.
+ * <p>
+ * The file stores each distinct string once, and refers to strings by index.
+ * A cache file that cannot be read is ignored and rewritten.
+ */
+public final class ClasspathCache implements ClassFileSource {
+
+    private static final int MAGIC = 0x41524243; // "ARBC"
+    private static final int VERSION = 1;
+
+    // How many class files of a directory one task reads.
+    private static final int SCAN_BATCH = 256;
+
+    private static final Comparator<ClassTree.ListedFile> BY_PATH =
+            new Comparator<ClassTree.ListedFile>() {
+                @Override
+                public int compare(ClassTree.ListedFile a,
+                        ClassTree.ListedFile b) {
+                    return a.path.compareTo(b.path);
+                }
+            };
+
+    private final File mFile;
+    private final ClassLoader mLoader;
+    private final String mPlatform;
+    private final String mJavaHome;
+
+    // The entries recorded in the cache, by path; after scan, those of the
+    // classpath scanned.
+    private Map<String, Entry> mEntries;
+    // The classes of the classpath scanned, by name. A class in several
+    // entries is taken from the first.
+    private final Map<String, ClassFile> mClasses;
+    private final Map<String, ClassFile> mPlatformClasses;
+    private boolean mChanged;
+
+    /**
+     * Reads the given cache file, if it exists. The loader is used to find
+     * the classes that are not in the classpath entries, such as those of the
+     * JDK.
+     */
+    public ClasspathCache(File file, ClassLoader loader) {
+        mFile = file;
+        mLoader = loader;
+        mPlatform = System.getProperty("java.home") + " "
+                + System.getProperty("java.version");
+        mJavaHome = new File(System.getProperty("java.home")).toURI()
+                .getPath();
+        mEntries = new HashMap<String, Entry>();
+        mClasses = new LinkedHashMap<String, ClassFile>();
+        mPlatformClasses = new HashMap<String, ClassFile>();
+        mChanged = true;
+        if (file.exists()) {
+            try {
+                load();
+                mChanged = false;
+            }
+            catch (IOException e) {
+                // A cache from an older version, or a truncated one; start
+                // from scratch.
+                mEntries.clear();
+                mPlatformClasses.clear();
+            }
+            catch (RuntimeException e) {
+                // A corrupt cache can refer to strings that do not exist.
+                mEntries.clear();
+                mPlatformClasses.clear();
+            }
+        }
+    }
+
+    /**
+     * Brings the cache up to date with the given classpath entries, reading
+     * those that changed, and returns the names of the classes they contain.
+     * The directories are walked, and the entries read, concurrently. Entries
+     * that do not exist are ignored; entries that cannot be read are reported
+     * and left out.
+     */
+    public List<String> scan(List<String> paths) {
+        Set<String> existing = new LinkedHashSet<String>();
+        List<String> directories = new ArrayList<String>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.exists() && existing.add(path) && file.isDirectory())
+                directories.add(path);
+        }
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        Map<String, List<Future<List<ClassFile>>>> scans =
+                new HashMap<String, List<Future<List<ClassFile>>>>();
+        ExecutorService executor = ClassTree.newPool("classpath scanner");
+        try {
+            // The directories are walked concurrently, all at once; their
+            // keys come from the class files found.
+            Map<String, List<ClassTree.ListedFile>> files =
+                    new HashMap<String, List<ClassTree.ListedFile>>();
+            for (String path : directories) {
+                files.put(path, new ArrayList<ClassTree.ListedFile>());
+            }
+            for (ClassTree.Listing listing : ClassTree.list(directories, true,
+                    executor)) {
+                files.get(listing.root).addAll(listing.files);
+            }
+            for (String path : existing) {
+                Entry old = mEntries.get(path);
+                List<ClassTree.ListedFile> listed = files.get(path);
+                Key key;
+                try {
+                    if (listed != null) {
+                        Collections.sort(listed, BY_PATH);
+                        key = Key.ofDirectory(listed);
+                    }
+                    else {
+                        key = Key.ofJar(new File(path), old == null ? null
+                                : old.key);
+                    }
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                if (old != null && old.key.hash.equals(key.hash)) {
+                    if (old.key.size != key.size
+                            || old.key.modified != key.modified)
+                        mChanged = true;
+                    entries.put(path, new Entry(key, old.classes));
+                }
+                else {
+                    entries.put(path, new Entry(key, null));
+                    scans.put(path, submitScans(executor, new File(path),
+                            listed));
+                    mChanged = true;
+                }
+            }
+            for (Map.Entry<String, List<Future<List<ClassFile>>>> e : scans
+                    .entrySet()) {
+                List<ClassFile> classes = new ArrayList<ClassFile>();
+                try {
+                    for (Future<List<ClassFile>> future : e.getValue()) {
+                        classes.addAll(awaitScan(future));
+                    }
+                }
+                catch (IOException ex) {
+                    // Neither kept nor saved under its new key, so that the
+                    // entry is read again next time.
+                    ex.printStackTrace();
+                    entries.remove(e.getKey());
+                    continue;
+                }
+                entries.put(e.getKey(), new Entry(entries.get(e.getKey()).key,
+                        classes));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        if (!entries.keySet().equals(mEntries.keySet()))
+            mChanged = true;
+        mEntries = entries;
+
+        mClasses.clear();
+        for (Entry entry : entries.values()) {
+            for (ClassFile file : entry.classes) {
+                if (!mClasses.containsKey(file.getName()))
+                    mClasses.put(file.getName(), file);
+            }
+        }
+        return new ArrayList<String>(mClasses.keySet());
+    }
+
+    // Reads a jar in one task, or the class files of a directory in tasks of
+    // SCAN_BATCH files each. The results are in the order of the files.
+    private static List<Future<List<ClassFile>>> submitScans(
+            ExecutorService executor, File file,
+            List<ClassTree.ListedFile> listed) {
+        List<Future<List<ClassFile>>> futures =
+                new ArrayList<Future<List<ClassFile>>>();
+        if (listed == null) {
+            futures.add(executor.submit(new ScanTask(file, null)));
+            return futures;
+        }
+        for (int i = 0; i < listed.size(); i += SCAN_BATCH) {
+            futures.add(executor.submit(new ScanTask(file, listed.subList(i,
+                    Math.min(i + SCAN_BATCH, listed.size())))));
+        }
+        return futures;
+    }
+
+    // The classes read by a ScanTask, rethrowing the IOException it threw.
+    private static List<ClassFile> awaitScan(Future<List<ClassFile>> future)
+            throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(
+                    "Interrupted while reading the classpath.");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public ClassFile find(String className) {
+        ClassFile file = mClasses.get(className);
+        if (file == null)
+            file = mPlatformClasses.get(className);
+        if (file != null)
+            return file;
+        URL url = mLoader.getResource(ClassTree.resourceName(className));
+        if (url == null)
+            return null;
+        try {
+            file = ClassFile.read(url);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        // Classes from elsewhere on the JVM's classpath are not kept: they
+        // belong to no entry whose changes the cache would notice.
+        if ("jrt".equals(url.getProtocol())
+                || url.getPath().contains(mJavaHome)) {
+            mPlatformClasses.put(className, file);
+            mChanged = true;
+        }
+        return file;
+    }
+
+    /**
+     * Writes the cache file, if anything changed since it was read. The file
+     * is replaced at once, so that concurrent runs read either version.
+     */
+    public void save() {
+        if (!mChanged)
+            return;
+        File temp = null;
+        try {
+            File dir = mFile.getAbsoluteFile().getParentFile();
+            temp = File.createTempFile(mFile.getName() + "-", ".tmp", dir);
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                write(out);
+            }
+            finally {
+                out.close();
+            }
+            if (!temp.renameTo(mFile))
+                throw new IOException("cannot replace " + mFile);
+            temp = null;
+            mChanged = false;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        finally {
+            if (temp != null)
+                temp.delete();
+        }
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(mFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("not a cache file of this version");
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            String platform = strings[in.readInt()];
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String path = strings[in.readInt()];
+                long size = in.readLong();
+                long modified = in.readLong();
+                String hash = strings[in.readInt()];
+                mEntries.put(path, new Entry(new Key(size, modified, hash),
+                        readClasses(in, strings)));
+            }
+            List<ClassFile> platformClasses = readClasses(in, strings);
+            if (platform.equals(mPlatform)) {
+                for (ClassFile file : platformClasses) {
+                    mPlatformClasses.put(file.getName(), file);
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static List<ClassFile> readClasses(DataInputStream in,
+            String[] strings) throws IOException {
+        int count = in.readInt();
+        List<ClassFile> classes = new ArrayList<ClassFile>(count);
+        for (int i = 0; i < count; i++) {
+            String name = strings[in.readInt()];
+            int superIndex = in.readInt();
+            String superName = superIndex < 0 ? null : strings[superIndex];
+            int access = in.readUnsignedShort();
+            List<String> interfaces = readStrings(in, strings);
+            int memberCount = in.readInt();
+            List<ClassFile.Member> members = new ArrayList<ClassFile.Member>(
+                    memberCount);
+            for (int j = 0; j < memberCount; j++) {
+                int memberAccess = in.readUnsignedShort();
+                String memberName = strings[in.readInt()];
+                String descriptor = strings[in.readInt()];
+                members.add(new ClassFile.Member(name, memberAccess,
+                        memberName, descriptor, readStrings(in, strings)));
+            }
+            classes.add(new ClassFile(name, superName,
+                    Collections.unmodifiableList(interfaces), access,
+                    Collections.unmodifiableList(members)));
+        }
+        return classes;
+    }
+
+    private static List<String> readStrings(DataInputStream in,
+            String[] strings) throws IOException {
+        int count = in.readInt();
+        List<String> list = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(strings[in.readInt()]);
+        }
+        return list;
+    }
+
+    // The strings go first in the file, so the rest is written to a buffer
+    // while they are collected.
+    private void write(DataOutputStream out) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(buffer);
+        body.writeInt(strings.indexOf(mPlatform));
+        body.writeInt(mEntries.size());
+        for (Map.Entry<String, Entry> e : mEntries.entrySet()) {
+            Key key = e.getValue().key;
+            body.writeInt(strings.indexOf(e.getKey()));
+            body.writeLong(key.size);
+            body.writeLong(key.modified);
+            body.writeInt(strings.indexOf(key.hash));
+            writeClasses(body, e.getValue().classes, strings);
+        }
+        writeClasses(body, mPlatformClasses.values(), strings);
+        body.flush();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(strings.list.size());
+        for (String s : strings.list) {
+            out.writeUTF(s);
+        }
+        buffer.writeTo(out);
+    }
+
+    private static void writeClasses(DataOutputStream out,
+            Collection<ClassFile> classes, StringTable strings)
+            throws IOException {
+        out.writeInt(classes.size());
+        for (ClassFile file : classes) {
+            out.writeInt(strings.indexOf(file.getName()));
+            out.writeInt(file.getSuperName() == null ? -1 : strings
+                    .indexOf(file.getSuperName()));
+            out.writeShort(file.getModifiers());
+            writeStrings(out, file.getInterfaceNames(), strings);
+            out.writeInt(file.getMembers().size());
+            for (ClassFile.Member m : file.getMembers()) {
+                out.writeShort(m.getModifiers());
+                out.writeInt(strings.indexOf(m.isConstructor() ? "<init>"
+                        : m.getName()));
+                out.writeInt(strings.indexOf(m.getDescriptor()));
+                writeStrings(out, m.getExceptionTypes(), strings);
+            }
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> list,
+            StringTable strings) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            out.writeInt(strings.indexOf(s));
+        }
+    }
+
+    private static class StringTable {
+        final List<String> list = new ArrayList<String>();
+        final Map<String, Integer> indices = new HashMap<String, Integer>();
+
+        int indexOf(String s) {
+            Integer index = indices.get(s);
+            if (index == null) {
+                index = list.size();
+                list.add(s);
+                indices.put(s, index);
+            }
+            return index;
+        }
+    }
+
+    // A classpath entry as last read, and the classes it contained.
+    private static class Entry {
+        final Key key;
+        final List<ClassFile> classes;
+
+        Entry(Key key, List<ClassFile> classes) {
+            this.key = key;
+            this.classes = classes;
+        }
+    }
+
+    // What identifies the contents of a classpath entry. For a directory,
+    // the size and modification time are the total size and the latest
+    // modification time of its class files.
+    private static class Key {
+        final long size;
+        final long modified;
+        final String hash;
+
+        Key(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        // Hashing a jar reads all of it, so it is only done if the size or
+        // modification time differs from the last key.
+        static Key ofJar(File jar, Key last) throws IOException {
+            long size = jar.length();
+            long modified = jar.lastModified();
+            if (last != null && last.size == size && last.modified == modified)
+                return last;
+            MessageDigest digest = newDigest();
+            InputStream in = new FileInputStream(jar);
+            try {
+                byte[] buf = new byte[1 << 16];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    digest.update(buf, 0, n);
+                }
+            }
+            finally {
+                in.close();
+            }
+            return new Key(size, modified, toHex(digest.digest()));
+        }
+
+        // The files must be sorted by path.
+        static Key ofDirectory(List<ClassTree.ListedFile> files)
+                throws IOException {
+            MessageDigest digest = newDigest();
+            long size = 0;
+            long modified = 0;
+            for (ClassTree.ListedFile file : files) {
+                digest.update((file.path + "\0" + file.size + "\0"
+                        + file.modified + "\n").getBytes("UTF-8"));
+                size += file.size;
+                modified = Math.max(modified, file.modified);
+            }
+            return new Key(size, modified, toHex(digest.digest()));
+        }
+
+        private static MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            }
+            catch (NoSuchAlgorithmException e) {
+                // Every Java platform has MD5.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static String toHex(byte[] bytes) {
+            StringBuilder b = new StringBuilder();
+            for (byte x : bytes) {
+                b.append(Integer.toHexString((x & 0xff) | 0x100).substring(1));
+            }
+            return b.toString();
+        }
+    }
+
+    // Reads the class files in a jar, or the given class files of a
+    // directory. A file that cannot be read fails the whole task.
+    private static class ScanTask implements Callable<List<ClassFile>> {
+        private final File mFile;
+        private final List<ClassTree.ListedFile> mListed;
+
+        ScanTask(File file, List<ClassTree.ListedFile> listed) {
+            mFile = file;
+            mListed = listed;
+        }
+
+        @Override
+        public List<ClassFile> call() throws IOException {
+            List<ClassFile> classes = new ArrayList<ClassFile>();
+            if (mListed != null)
+                scanFiles(classes);
+            else
+                scanJar(classes);
+            return classes;
+        }
+
+        private void scanJar(List<ClassFile> classes) throws IOException {
+            ZipFile zip = new ZipFile(mFile);
+            try {
+                Enumeration<? extends ZipEntry> en = zip.entries();
+                while (en.hasMoreElements()) {
+                    ZipEntry entry = en.nextElement();
+                    if (!entry.getName().endsWith(".class"))
+                        continue;
+                    InputStream in = zip.getInputStream(entry);
+                    try {
+                        add(entry.getName(), new BufferedInputStream(in),
+                                classes);
+                    }
+                    finally {
+                        in.close();
+                    }
+                }
+            }
+            finally {
+                zip.close();
+            }
+        }
+
+        private void scanFiles(List<ClassFile> classes) throws IOException {
+            for (ClassTree.ListedFile listed : mListed) {
+                InputStream in = new BufferedInputStream(new FileInputStream(
+                        listed.file));
+                try {
+                    add(listed.path, in, classes);
+                }
+                finally {
+                    in.close();
+                }
+            }
+        }
+
+        // Skips module-info, and classes that are not where their names
+        // say, such as those under META-INF/versions of a multi-release jar.
+        private static void add(String path, InputStream in,
+                List<ClassFile> classes) throws IOException {
+            ClassFile file = ClassFile.read(in);
+            if (!file.isModule()
+                    && path.equals(ClassTree.resourceName(file.getName())))
+                classes.add(file);
+        }
+    }
+}
@@ -2,12 +2,17 @@ package arbitcheck;
 
 import java.util.List;
 
+/**
+ * A constructor or method, with its types given by name (as returned by
+ * {@link Class#getName()}), so that it can be described without loading its
+ * class.
+ */
 public interface Function {
-    public Class<?> getContainingClass();
+    public String getContainingClass();
 
-    public List<Class<?>> getInputTypes();
+    public List<String> getInputTypes();
 
-    public Class<?> getOutputType();
+    public String getOutputType();
 
     public String getName();
 
@@ -1,8 +1,12 @@
 package arbitcheck;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import plume.Options;
+import plume.Options.ArgException;
+
 public final class Main {
     private final List<String> mArgs;
     private final TestTargeter mTestTargeter;
@@ -10,7 +14,10 @@ public final class Main {
 
     private Main(List<String> args, String userClasspath) {
         mArgs = args;
-        mTestTargeter = new TestTargeter(ClassTree.fromClasspath(userClasspath));
+        String cache = TestTargeter.target_classpath_cache;
+        mTestTargeter = new TestTargeter(cache.length() == 0 ? ClassTree
+                .fromClasspath(userClasspath) : ClassTree.fromClasspath(
+                userClasspath, new File(cache)));
         mTargetClasses = new ArrayList<String>();
     }
 
@@ -63,6 +70,28 @@ public final class Main {
         return s.substring(0, 1).toUpperCase() + s.substring(1);
     }
 
+    // TestTargeter's options are needed before randoop reads the others. They
+    // are passed on to randoop as well, which accepts them.
+    private static void parseTargeterOptions(List<String> args) {
+        List<String> targeterArgs = new ArrayList<String>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (!arg.startsWith("--target_"))
+                continue;
+            targeterArgs.add(arg);
+            if (arg.indexOf('=') == -1 && i + 1 < args.size())
+                targeterArgs.add(args.get(++i));
+        }
+        try {
+            new Options(TestTargeter.class).parse(targeterArgs
+                    .toArray(new String[0]));
+        }
+        catch (ArgException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
     public static void main(String[] args) {
         if (args.length == 0) {
             System.err
@@ -77,6 +106,7 @@ public final class Main {
         for (int i = 2; i < args.length; i++) {
             newargs.add(args[i]);
         }
+        parseTargeterOptions(newargs);
         new Main(newargs, userClasspath).runCheck(property);
     }
 }
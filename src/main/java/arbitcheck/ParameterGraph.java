@@ -1,6 +1,7 @@
 package arbitcheck;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -8,22 +9,54 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
 
 public class ParameterGraph {
-    private Map<Class<?>, TypeNode> mTypes;
+    private final ClassTree mClassTree;
+    private Map<String, TypeNode> mTypes;
     private Map<Function, FunctionNode> mFunctions;
 
     public ParameterGraph(ClassTree classTree) {
-        mTypes = new HashMap<Class<?>, ParameterGraph.TypeNode>();
+        mClassTree = classTree;
+        mTypes = new HashMap<String, ParameterGraph.TypeNode>();
         mFunctions = new HashMap<Function, ParameterGraph.FunctionNode>();
         buildNodes(classTree);
-        buildEdges(classTree);
+        buildEdges();
+    }
+
+    /**
+     * Builds only the part of the graph around the given types, breadth-first
+     * from them: the functions that produce each type, or belong to it, and
+     * the types those functions take, return or belong to. Expansion stops
+     * after maxDepth such steps, or once the graph has maxTypes types (0
+     * meaning no limit).
+     * <p>
+     * Without limits, the ranks and dependences of the given types are those
+     * of the whole graph. Types that randoop creates directly, which are not
+     * expanded, are given the rank that almost all of them have in the whole
+     * graph, 1. Limits cut off providers, so some types may lose their rank.
+     * <p>
+     * A root that is not in the class tree, such as a parameter type only a
+     * private method mentions, is given a node but not expanded; it has no
+     * rank, as in the whole graph.
+     */
+    public ParameterGraph(ClassTree classTree, Collection<String> roots,
+            int maxDepth, int maxTypes) {
+        mClassTree = classTree;
+        mTypes = new HashMap<String, ParameterGraph.TypeNode>();
+        mFunctions = new HashMap<Function, ParameterGraph.FunctionNode>();
+        buildNodes(roots, maxDepth, maxTypes);
+        buildEdges();
+        for (Map.Entry<String, TypeNode> e : mTypes.entrySet()) {
+            if (ClassTree.hasLiteral(e.getKey()))
+                e.getValue().rank = 1;
+        }
     }
 
     private void buildNodes(ClassTree classTree) {
-        for (Class<?> clazz : classTree.getAllClasses()) {
+        for (String clazz : classTree.getAllClasses()) {
             addTypeNode(clazz);
-            for (Function function : ClassTree.getFunctions(clazz)) {
+            for (Function function : classTree.getFunctions(clazz)) {
                 if (function.isPublic()) {
                     addFunctionNode(function);
                 }
@@ -31,48 +64,111 @@ public class ParameterGraph {
         }
     }
 
-    private void addTypeNode(Class<?> clazz) {
+    private void buildNodes(Collection<String> roots, int maxDepth,
+            int maxTypes) {
+        List<String> types = new ArrayList<String>();
+        for (String root : roots) {
+            if (addTypeNode(root) && mClassTree.contains(root))
+                types.add(root);
+        }
+        for (int depth = 0; !types.isEmpty()
+                && (maxDepth <= 0 || depth < maxDepth); depth++) {
+            List<Function> functions = new ArrayList<Function>();
+            for (String clazz : types) {
+                if (ClassTree.hasLiteral(clazz))
+                    continue;
+                // providers
+                for (String c : mClassTree.getAllChildren(clazz, true)) {
+                    for (Function function : mClassTree.getProducers(c)) {
+                        if (addFunctionNode(function))
+                            functions.add(function);
+                    }
+                }
+                // mutators
+                for (Function function : mClassTree.getFunctions(clazz)) {
+                    if (function.isPublic() && addFunctionNode(function))
+                        functions.add(function);
+                }
+            }
+            types = new ArrayList<String>();
+            for (Function function : functions) {
+                List<String> related = new ArrayList<String>();
+                related.add(function.getContainingClass());
+                related.add(function.getOutputType());
+                for (String input : function.getInputTypes()) {
+                    if (!ClassTree.hasLiteral(input))
+                        related.addAll(mClassTree.getAllChildren(input, true));
+                }
+                for (String clazz : related) {
+                    if (maxTypes > 0 && mTypes.size() >= maxTypes)
+                        return;
+                    if (addTypeNode(clazz))
+                        types.add(clazz);
+                }
+            }
+        }
+    }
+
+    private boolean addTypeNode(String clazz) {
+        if (mTypes.containsKey(clazz))
+            return false;
         mTypes.put(clazz, new TypeNode(clazz));
+        return true;
     }
 
-    private void addFunctionNode(Function function) {
+    private boolean addFunctionNode(Function function) {
+        if (mFunctions.containsKey(function))
+            return false;
         mFunctions.put(function, new FunctionNode(function));
+        return true;
     }
 
-    private void buildEdges(ClassTree classTree) {
-        for (Class<?> clazz : classTree.getAllClasses()) {
-            for (Function function : ClassTree.getFunctions(clazz)) {
-                if (!function.isPublic())
+    // Connects the nodes built, looking each up once; edges to types left
+    // out of the graph are dropped. The functions are taken in a fixed order,
+    // so that getProvider breaks ties the same way however much of the graph
+    // was built.
+    private void buildEdges() {
+        Map<String, FunctionNode> sorted = new TreeMap<String, FunctionNode>();
+        for (FunctionNode node : mFunctions.values()) {
+            Function f = node.function;
+            sorted.put(f.getContainingClass() + "." + f.getName()
+                    + f.getInputTypes() + f.getOutputType(), node);
+        }
+        for (FunctionNode fnode : sorted.values()) {
+            Function function = fnode.function;
+            for (String c : mClassTree.getAllParents(
+                    function.getOutputType(), true)) {
+                TypeNode tnode = mTypes.get(c);
+                if (tnode != null)
+                    addProviderEdge(fnode, tnode);
+            }
+            List<String> inputs = function.getInputTypes();
+            for (int i = 0; i < inputs.size(); i++) {
+                if (ClassTree.hasLiteral(inputs.get(i))) {
+                    fnode.boxes[i] = true;
                     continue;
-                for (Class<?> c : classTree.getAllParents(
-                        function.getOutputType(), true)) {
-                    addProviderEdge(function, c);
                 }
-                List<Class<?>> inputs = function.getInputTypes();
-                for (int i = 0; i < inputs.size(); i++) {
-                    if (ClassTree.hasLiteral(inputs.get(i))) {
-                        mFunctions.get(function).boxes[i] = true;
-                        continue;
-                    }
-                    for (Class<?> c : classTree.getAllChildren(inputs.get(i),
-                            true)) {
-                        addConsumerEdge(function, c, i);
-                    }
+                for (String c : mClassTree.getAllChildren(inputs.get(i),
+                        true)) {
+                    TypeNode tnode = mTypes.get(c);
+                    if (tnode != null)
+                        addConsumerEdge(fnode, tnode, i);
                 }
             }
         }
     }
 
-    private void addProviderEdge(Function function, Class<?> clazz) {
-        mFunctions.get(function).edges.add(mTypes.get(clazz));
-        mFunctions.get(function).tobox.add(0);
-        mTypes.get(clazz).revedges.add(mFunctions.get(function));
+    private static void addProviderEdge(FunctionNode fnode, TypeNode tnode) {
+        fnode.edges.add(tnode);
+        fnode.tobox.add(0);
+        tnode.revedges.add(fnode);
     }
 
-    private void addConsumerEdge(Function function, Class<?> clazz, int index) {
-        mTypes.get(clazz).edges.add(mFunctions.get(function));
-        mTypes.get(clazz).tobox.add(index);
-        mFunctions.get(function).revedges.add(mTypes.get(clazz));
+    private static void addConsumerEdge(FunctionNode fnode, TypeNode tnode,
+            int index) {
+        tnode.edges.add(fnode);
+        tnode.tobox.add(index);
+        fnode.revedges.add(tnode);
     }
 
     public void calculateRank() {
@@ -98,17 +194,17 @@ public class ParameterGraph {
         }
     }
 
-    public int getRank(Class<?> clazz) {
+    public int getRank(String clazz) {
         return mTypes.get(clazz).rank;
     }
 
-    public Set<Class<?>> getDependences(Class<?> clazz) {
-        Set<Class<?>> depends = new HashSet<Class<?>>();
+    public Set<String> getDependences(String clazz) {
+        Set<String> depends = new HashSet<String>();
         addDepends(clazz, depends);
         return depends;
     }
 
-    public void addDepends(Class<?> clazz, Set<Class<?>> deps) {
+    public void addDepends(String clazz, Set<String> deps) {
         if (ClassTree.hasLiteral(clazz))
             return;
         if (deps.contains(clazz))
@@ -120,15 +216,15 @@ public class ParameterGraph {
         // add providers
         addDepends(getProvider(clazz, deps), deps);
         // add parameters and mutators
-        for (Function function : ClassTree.getFunctions(clazz)) {
+        for (Function function : mClassTree.getFunctions(clazz)) {
             if (!function.isPublic())
                 continue;
             addDepends(function, deps);
         }
     }
 
-    public void addDepends(Function function, Set<Class<?>> deps) {
-        if (function.getContainingClass().equals(Object.class)) {
+    public void addDepends(Function function, Set<String> deps) {
+        if (function.getContainingClass().equals("java.lang.Object")) {
             return;
         }
         addDepends(function.getContainingClass(), deps);
@@ -147,15 +243,15 @@ public class ParameterGraph {
         addDepends(function.getOutputType(), deps);
     }
 
-    public Class<?> getProvider(Class<?> clazz, Set<Class<?>> deps) {
+    public String getProvider(String clazz, Set<String> deps) {
         Node node = mTypes.get(clazz);
         if (node == null || node.rank == -1)
             return null;
-        Class<?> provider = null;
+        String provider = null;
         int minRank = Integer.MAX_VALUE;
         for (Node n : node.revedges) {
             Function function = ((FunctionNode) n).function;
-            Class<?> fclass = function.getContainingClass();
+            String fclass = function.getContainingClass();
             Node pnode = mTypes.get(fclass);
             if (pnode != null && pnode.rank != -1) {
                 if (pnode.rank < minRank) {
@@ -190,9 +286,9 @@ public class ParameterGraph {
     }
 
     private static class TypeNode extends Node {
-        // public final Class<?> clazz;
+        // public final String clazz;
 
-        public TypeNode(Class<?> clazz) {
+        public TypeNode(String clazz) {
             super(1);
             // this.clazz = clazz;
         }
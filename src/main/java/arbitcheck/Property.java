@@ -0,0 +1,79 @@
+package arbitcheck;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import randoop.ExceptionalExecution;
+import randoop.ExecutionOutcome;
+import randoop.ForkedExecutor;
+import randoop.NormalExecution;
+import randoop.RMethod;
+import randoop.StatementKind;
+
+/**
+ * A method annotated with {@link Check}, with its annotation read once. Use
+ * {@link #of(StatementKind)} rather than reading the annotation again for
+ * every sequence.
+ */
+public final class Property {
+
+    // The property of each method seen so far; NONE for methods that are not
+    // checks.
+    private static final ConcurrentMap<Method, Property> properties = new ConcurrentHashMap<Method, Property>();
+
+    private static final Property NONE = new Property(null, null);
+
+    private final Method method;
+
+    // The exception the check is expected to throw, or null if it is expected
+    // to return normally.
+    private final Class<? extends Throwable> expected;
+
+    private Property(Method method, Class<? extends Throwable> expected) {
+        this.method = method;
+        this.expected = expected;
+    }
+
+    /**
+     * Returns the property checked by the given statement, or null if the
+     * statement is not a call to a method annotated with {@link Check}.
+     */
+    public static Property of(StatementKind statement) {
+        if (!(statement instanceof RMethod))
+            return null;
+        Method m = ((RMethod) statement).getMethod();
+        Property p = properties.get(m);
+        if (p == null) {
+            Check check = m.getAnnotation(Check.class);
+            if (check == null) {
+                p = NONE;
+            }
+            else if (Check.None.class.equals(check.expected())) {
+                p = new Property(m, null);
+            }
+            else {
+                p = new Property(m, check.expected());
+            }
+            properties.put(m, p);
+        }
+        return p == NONE ? null : p;
+    }
+
+    /** The method annotated with {@link Check}. */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Whether the given outcome of calling the method satisfies the property:
+     * a normal return, or the expected exception if the annotation names one.
+     */
+    public boolean holds(ExecutionOutcome outcome) {
+        if (expected == null)
+            return outcome instanceof NormalExecution;
+        return outcome instanceof ExceptionalExecution
+                && ForkedExecutor.isInstance(expected,
+                        ((ExceptionalExecution) outcome).getException());
+    }
+}
@@ -12,6 +12,9 @@ import randoop.Variable;
 
 public class RMonitoring implements StatementKind {
 
+    /** ID for parsing purposes (see StatementKinds.parse method) */
+    public static final String ID = "monitoring";
+
     @Override
     public List<Class<?>> getInputTypes() {
         return Collections.emptyList();
@@ -42,4 +45,12 @@ public class RMonitoring implements StatementKind {
     public String toParseableString() {
         return "";
     }
+
+    /**
+     * A monitoring statement has no description, so any description parses
+     * to a new monitoring statement.
+     */
+    public static StatementKind parse(String description) {
+        return new RMonitoring();
+    }
 }
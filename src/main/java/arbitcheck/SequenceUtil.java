@@ -1,14 +1,15 @@
 package arbitcheck;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import randoop.ExceptionalExecution;
 import randoop.ExecutableSequence;
 import randoop.ExecutionOutcome;
+import randoop.ForkedExecutor;
 import randoop.NormalExecution;
-import randoop.RMethod;
 import randoop.Sequence;
-import randoop.StatementKind;
 import randoop.main.GenInputsAbstract;
 
 public final class SequenceUtil {
@@ -33,55 +34,91 @@ public final class SequenceUtil {
     }
 
     public static boolean isChecked(Sequence s) {
-        StatementKind stmt = s.getLastStatement();
-        if (stmt instanceof RMethod) {
-            Method m = ((RMethod) stmt).getMethod();
-            return m.getAnnotation(Check.class) != null;
+        return Property.of(s.getLastStatement()) != null;
+    }
+
+    /**
+     * Returns the verdict on the last execution of the given sequence. The
+     * verdict is computed the first time it is asked for after an execution,
+     * normally by CheckVisitor as the last statement is executed, and then
+     * read from the sequence.
+     */
+    public static Verdict verdict(ExecutableSequence s) {
+        Verdict v = s.getVerdict();
+        if (v == null) {
+            v = computeVerdict(s);
+            s.setVerdict(v);
         }
-        return false;
+        return v;
+    }
+
+    private static Verdict computeVerdict(ExecutableSequence s) {
+        Property property = Property.of(s.sequence.getLastStatement());
+        if (property == null)
+            return Verdict.NOT_A_CHECK;
+        if (didViolateAssumption(s))
+            return Verdict.DISCARD;
+        if (s.hasNonExecutedStatements())
+            return Verdict.FAIL;
+        return property.holds(s.getResult(s.sequence.size() - 1)) ? Verdict.PASS
+                : Verdict.FAIL;
     }
 
     public static boolean didViolateAssumption(ExecutableSequence s) {
         for (int i = 0; i < s.sequence.size(); i++) {
             ExecutionOutcome outcome = s.getResult(i);
-            if (outcome instanceof ExceptionalExecution) {
-                // check if the exception is the one thrown by assume*()
-                for (Class<?> assumptionClass : GenInputsAbstract.assumption_class_list) {
-                    if (assumptionClass
-                            .isInstance(((ExceptionalExecution) outcome)
-                                    .getException())) {
-                        return true;
-                    }
-                }
+            if (outcome instanceof ExceptionalExecution
+                    && isAssumptionViolation(((ExceptionalExecution) outcome)
+                            .getException())) {
+                return true;
             }
         }
         return false;
     }
 
+    // Whether each exception class seen so far is one of
+    // GenInputsAbstract.assumption_class_list or a subclass of one. The list
+    // is filled in before generation starts and doesn't change afterwards.
+    private static final ConcurrentMap<Class<?>, Boolean> assumptionViolations = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /**
+     * Whether the given exception, thrown by code under test, is the one
+     * thrown by assume*(), i.e. an instance of one of the
+     * <code>--assumption_classes</code>.
+     */
+    public static boolean isAssumptionViolation(Throwable e) {
+        if (e instanceof ForkedExecutor.RemoteException) {
+            // Thrown in a child JVM; its class is known only by name.
+            for (Class<?> assumptionClass : GenInputsAbstract.assumption_class_list) {
+                if (ForkedExecutor.isInstance(assumptionClass, e))
+                    return true;
+            }
+            return false;
+        }
+        Class<?> c = e.getClass();
+        Boolean result = assumptionViolations.get(c);
+        if (result == null) {
+            result = false;
+            for (Class<?> assumptionClass : GenInputsAbstract.assumption_class_list) {
+                if (assumptionClass.isAssignableFrom(c)) {
+                    result = true;
+                    break;
+                }
+            }
+            assumptionViolations.put(c, result);
+        }
+        return result;
+    }
+
     public static boolean isSuccessful(ExecutableSequence s) {
         if (s.hasNonExecutedStatements()) {
             return false;
         }
         ExecutionOutcome outcome = s.getResult(s.sequence.size() - 1);
-        StatementKind stmt = s.sequence.getLastStatement();
-        Class<? extends Throwable> expected = Check.None.class;
-        if (stmt instanceof RMethod) {
-            Method m = ((RMethod) stmt).getMethod();
-            Check check = (Check) m.getAnnotation(Check.class);
-            if (check != null) {
-                expected = check.expected();
-            }
-        }
-        if (Check.None.class.equals(expected)) {
+        Property property = Property.of(s.sequence.getLastStatement());
+        if (property == null) {
             return outcome instanceof NormalExecution;
         }
-        else {
-            if (outcome instanceof ExceptionalExecution) {
-                Throwable exception = ((ExceptionalExecution) outcome)
-                        .getException();
-                return expected.isInstance(exception);
-            }
-            return false;
-        }
+        return property.holds(outcome);
     }
 }
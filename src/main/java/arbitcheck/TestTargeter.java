@@ -4,33 +4,60 @@ import java.lang.reflect.Method;
 import java.util.HashSet;
 import java.util.Set;
 
+import plume.Option;
+
 public final class TestTargeter {
-    private final ParameterGraph mParameterGraph;
+    /**
+     * How far from the property's parameter types to look for the classes to
+     * test, in steps from a type to the functions that produce or belong to
+     * it and on to the types of those. Types further away are not considered.
+     */
+    @Option("Most steps from the property's parameter types to look for classes to test (0 means no limit)")
+    public static int target_depth = 0;
+
+    /**
+     * How many types to consider, at most, when looking for the classes to
+     * test; those nearest the property's parameter types are kept.
+     */
+    @Option("Most types to consider when looking for classes to test (0 means no limit)")
+    public static int target_types = 0;
+
+    /**
+     * The file in which the class files of the classpath are kept between
+     * runs, so that only the jars and directories that changed are read
+     * again. Relative to the working directory; empty to keep no cache.
+     */
+    @Option("File to keep the classpath's class files in between runs (empty for none)")
+    public static String target_classpath_cache = ".arbitcheck-cache";
+
+    private final ClassTree mClassTree;
 
     public TestTargeter(ClassTree classTree) {
-        mParameterGraph = new ParameterGraph(classTree);
-        mParameterGraph.calculateRank();
+        mClassTree = classTree;
     }
 
     public Set<String> determineTarget(Method method) {
         Set<String> targets = new HashSet<String>();
         targets.add(method.getDeclaringClass().getName());
-        Set<Class<?>> params = new HashSet<Class<?>>();
+        Set<String> params = new HashSet<String>();
         Function f = new AMethod(method);
         Check check = method.getAnnotation(Check.class);
         boolean shouldIgnoreMonitoring =
                 check == null ? false : check.monitoring();
-        for (Class<?> clazz : f.getInputTypes()) {
-            if (shouldIgnoreMonitoring && Monitoring.class.equals(clazz)) {
+        for (String clazz : f.getInputTypes()) {
+            if (shouldIgnoreMonitoring
+                    && Monitoring.class.getName().equals(clazz)) {
                 shouldIgnoreMonitoring = false;
                 continue;
             }
             params.add(clazz);
         }
-        for (Class<?> clazz : params) {
-            for (Class<?> c : mParameterGraph.getDependences(clazz)) {
-                targets.add(c.getName());
-            }
+        // Only the neighbourhood of the parameter types matters.
+        ParameterGraph graph = new ParameterGraph(mClassTree, params,
+                target_depth, target_types);
+        graph.calculateRank();
+        for (String clazz : params) {
+            targets.addAll(graph.getDependences(clazz));
         }
         return targets;
     }
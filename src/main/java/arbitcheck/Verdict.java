@@ -0,0 +1,19 @@
+package arbitcheck;
+
+/**
+ * The outcome of executing a sequence, as far as property checking is
+ * concerned. See {@link SequenceUtil#verdict(randoop.ExecutableSequence)}.
+ */
+public enum Verdict {
+    /** The sequence ends with a property check, which held. */
+    PASS,
+    /** The sequence ends with a property check, which did not hold. */
+    FAIL,
+    /**
+     * The sequence ends with a property check, but an assumption of the
+     * property was violated, so the result is not counted.
+     */
+    DISCARD,
+    /** The sequence does not end with a property check. */
+    NOT_A_CHECK
+}
@@ -3,7 +3,12 @@ package randoop;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import plume.Option;
 import plume.OptionGroup;
@@ -11,6 +16,7 @@ import plume.Unpublicized;
 import randoop.main.GenInputsAbstract;
 import randoop.util.Log;
 import randoop.util.ProgressDisplay;
+import randoop.util.Randomness;
 import randoop.util.ReflectionExecutor;
 import randoop.util.Timer;
 
@@ -114,6 +120,21 @@ public abstract class AbstractGenerator {
      */
     public List<ITestFilter> outputTestFilters;
 
+    /**
+     * The stream from which this generator draws its random choices. By
+     * default, it is seeded with the --worker_seed option if given, and with
+     * the --randomseed option otherwise.
+     */
+    protected Randomness random = new Randomness(
+            GenInputsAbstract.worker_seed != null ? GenInputsAbstract.worker_seed
+                    : GenInputsAbstract.randomseed);
+
+    /**
+     * The first exception thrown by a parallel generation worker, if any. Once
+     * set, the remaining workers stop generating.
+     */
+    private volatile Throwable workerFailure = null;
+
     /**
      * Constructs a generator with the given parameters.
      * 
@@ -180,7 +201,8 @@ public abstract class AbstractGenerator {
     }
 
     protected boolean stop() {
-        return (listenerMgr != null && listenerMgr.stopGeneration())
+        return (workerFailure != null)
+                || (listenerMgr != null && listenerMgr.stopGeneration())
                 || (timer.getTimeElapsedMillis() >= maxTimeMillis)
                 || (numSequences() >= maxSequences)
                 || (stopper != null && stopper.stop());
@@ -217,59 +239,11 @@ public abstract class AbstractGenerator {
             listenerMgr.explorationStart();
         }
 
-        while (!stop()) {
-
-            // Notify listeners we are about to perform a generation step.
-            if (listenerMgr != null) {
-                listenerMgr.generationStepPre();
-            }
-
-            num_steps++;
-
-            ExecutableSequence eSeq = step();
-            if (dump_sequences) {
-                System.out.printf("seq before run: %s%n", eSeq);
-            }
-
-            // Notify listeners we just completed generation step.
-            if (listenerMgr != null) {
-                listenerMgr.generationStepPost(eSeq);
-            }
-
-            if (eSeq == null)
-                continue;
-
-            num_sequences_generated++;
-
-            FailureSet fa = new FailureSet(eSeq);
-
-            if (fa.getFailures().size() > 0) {
-                num_failing_sequences++;
-            }
-
-            boolean outputSequence = true;
-            for (ITestFilter f : outputTestFilters) {
-                if (!f.outputSequence(eSeq, fa)) {
-                    outputSequence = false;
-                    break;
-                }
-            }
-            if (outputSequence) {
-                outSeqs.add(eSeq);
-            }
-
-            if (dump_sequences) {
-                System.out.printf("Sequence after execution:%n%s%n",
-                        eSeq.toString());
-                System.out.printf("allSequences.size() = %d%n", numSequences());
-            }
-
-            if (Log.isLoggingOn()) {
-                Log.logLine("Sequence after execution: " + Globals.lineSep
-                        + eSeq.toString());
-                Log.logLine("allSequences.size()=" + numSequences());
-            }
-
+        if (GenInputsAbstract.workers > 1) {
+            exploreInParallel(GenInputsAbstract.workers);
+        }
+        else {
+            generate(this);
         }
 
         if (!GenInputsAbstract.noprogressdisplay && progressDisplay != null) {
@@ -301,12 +275,284 @@ public abstract class AbstractGenerator {
     }
 
     /**
-     * Returns the set of sequences that are used as inputs in other sequences
-     * (and can thus be thought of as subsumed by another sequence). This should
-     * only be called for subclasses that support this.
+     * The number of components evicted to stay within --component_limit and
+     * --component_type_limit.
+     */
+    public int numEvictedComponents() {
+        return componentManager.numEvictedSequences();
+    }
+
+    public Randomness getRandomness() {
+        return random;
+    }
+
+    public void setRandomness(Randomness random) {
+        if (random == null)
+            throw new IllegalArgumentException();
+        this.random = random;
+    }
+
+    /**
+     * Runs generation steps on the given worker until the stopping criteria of
+     * this generator are met. The worker is this generator itself, unless
+     * generating in parallel.
      */
-    public Set<Sequence> subsumed_sequences() {
-        throw new Error("subsumed_sequences not supported for "
+    private void generate(AbstractGenerator worker) {
+        while (!stop()) {
+            performStep(worker, false);
+        }
+    }
+
+    // Performs a generation step on the given worker, or commits the next
+    // step it prepared in a round.
+    private void performStep(AbstractGenerator worker, boolean prepared) {
+
+        // Notify listeners we are about to perform a generation step.
+        if (listenerMgr != null) {
+            listenerMgr.generationStepPre();
+        }
+
+        countStep();
+
+        ExecutableSequence eSeq = prepared ? worker.commitStep() : worker
+                .step();
+        if (eSeq != null && recordsSeeds())
+            eSeq.workerSeed = worker.random.getSeed();
+        if (dump_sequences) {
+            System.out.printf("seq before run: %s%n", eSeq);
+        }
+
+        recordStep(eSeq);
+    }
+
+    // The counters, listeners and output sequences of this generator are
+    // shared by all parallel workers, so updates to them are synchronized.
+    private synchronized void countStep() {
+        num_steps++;
+    }
+
+    private synchronized void recordStep(ExecutableSequence eSeq) {
+
+        // Notify listeners we just completed generation step.
+        if (listenerMgr != null) {
+            listenerMgr.generationStepPost(eSeq);
+        }
+
+        if (eSeq == null)
+            return;
+
+        num_sequences_generated++;
+
+        FailureSet fa = new FailureSet(eSeq);
+
+        if (fa.getFailures().size() > 0) {
+            num_failing_sequences++;
+        }
+
+        boolean outputSequence = true;
+        for (ITestFilter f : outputTestFilters) {
+            if (!f.outputSequence(eSeq, fa)) {
+                outputSequence = false;
+                break;
+            }
+        }
+        if (outputSequence) {
+            outSeqs.add(eSeq);
+        }
+
+        if (dump_sequences) {
+            System.out.printf("Sequence after execution:%n%s%n",
+                    eSeq.toString());
+            System.out.printf("allSequences.size() = %d%n", numSequences());
+        }
+
+        if (Log.isLoggingOn()) {
+            Log.logLine("Sequence after execution: " + Globals.lineSep
+                    + eSeq.toString());
+            Log.logLine("allSequences.size()=" + numSequences());
+        }
+    }
+
+    // Whether sequences record the seed of the stream they were generated
+    // from: when generating in parallel, or replaying one worker.
+    private static boolean recordsSeeds() {
+        return GenInputsAbstract.workers > 1
+                || GenInputsAbstract.worker_seed != null;
+    }
+
+    /**
+     * Runs the given number of workers (see <code>newWorker</code>) at once
+     * until the stopping criteria of this generator are met. Worker <i>i</i>
+     * draws its random choices from the <i>i</i>-th stream split off this
+     * generator's stream. The seed of each worker's stream is printed, and
+     * recorded in the sequences the worker generates. Isolated workers run
+     * independently, each on its own thread; workers sharing their components
+     * run in rounds (see <code>exploreInRounds</code>).
+     */
+    private void exploreInParallel(int numWorkers) {
+        List<AbstractGenerator> workers = new ArrayList<AbstractGenerator>(
+                numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            AbstractGenerator worker = newWorker(i);
+            worker.setRandomness(random.split());
+            System.out.println("Generation worker " + i + " uses random seed "
+                    + worker.random.getSeed());
+            workers.add(worker);
+        }
+        if (GenInputsAbstract.isolate_workers) {
+            exploreIsolated(workers);
+        }
+        else {
+            exploreInRounds(workers);
+        }
+    }
+
+    // Runs each of the workers on its own thread.
+    private void exploreIsolated(List<AbstractGenerator> workers) {
+        List<Thread> threads = new ArrayList<Thread>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            final AbstractGenerator worker = workers.get(i);
+            Thread t = new Thread("generation worker " + i) {
+                @Override
+                public void run() {
+                    try {
+                        generate(worker);
+                    }
+                    catch (Throwable e) {
+                        synchronized (AbstractGenerator.this) {
+                            if (workerFailure == null)
+                                workerFailure = e;
+                        }
+                    }
+                }
+            };
+            t.setDaemon(true);
+            threads.add(t);
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(
+                        "Interrupted while waiting for generation workers.");
+            }
+        }
+        if (workerFailure != null) {
+            throw new Error("generation worker failed", workerFailure);
+        }
+    }
+
+    /**
+     * Runs workers that share their components in rounds. In each round, all
+     * workers prepare --worker_round steps at once (see
+     * <code>prepareRound</code>), from the components as they were when the
+     * round started. The steps are then committed one at a time, worker by
+     * worker in order, on this thread. Which sequences are generated thus
+     * does not depend on how the workers' threads are scheduled, and a run is
+     * reproducible from its random seed.
+     */
+    private void exploreInRounds(final List<AbstractGenerator> workers) {
+        List<Callable<Void>> rounds = new ArrayList<Callable<Void>>(
+                workers.size());
+        for (final AbstractGenerator worker : workers) {
+            rounds.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    worker.prepareRound(GenInputsAbstract.worker_round);
+                    return null;
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                workers.size(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "generation worker");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            while (!stop()) {
+                List<Future<Void>> results;
+                try {
+                    results = executor.invokeAll(rounds);
+                    for (Future<Void> result : results) {
+                        result.get();
+                    }
+                }
+                catch (InterruptedException e) {
+                    throw new IllegalStateException(
+                            "Interrupted while waiting for generation workers.");
+                }
+                catch (ExecutionException e) {
+                    throw new Error("generation worker failed", e.getCause());
+                }
+                commitRound(workers);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Commits the steps the workers prepared in the last round, unless the
+    // stopping criteria are met first.
+    private void commitRound(List<AbstractGenerator> workers) {
+        for (AbstractGenerator worker : workers) {
+            for (int i = 0; i < GenInputsAbstract.worker_round; i++) {
+                if (stop())
+                    return;
+                performStep(worker, true);
+            }
+        }
+    }
+
+    /**
+     * Creates a generator that performs generation steps on behalf of this
+     * one, sharing its component manager unless --isolate_workers is given.
+     * The stopping criteria, listeners and output sequences of this generator
+     * apply to all of its workers. This should only be called for subclasses
+     * that support parallel generation.
+     */
+    protected AbstractGenerator newWorker(int index) {
+        throw new Error("parallel generation not supported for "
+                + this.getClass());
+    }
+
+    /**
+     * Creates and executes the sequences of the given number of generation
+     * steps, to be committed by <code>commitStep</code>. The sequences are
+     * created from the components as they are now, and no state shared with
+     * other workers may change, since the other workers are preparing their
+     * steps at the same time. This should only be called for subclasses that
+     * support parallel generation.
+     */
+    protected void prepareRound(int steps) {
+        throw new Error("parallel generation not supported for "
                 + this.getClass());
     }
+
+    /**
+     * Commits the next step prepared by <code>prepareRound</code>, adding its
+     * sequence to the components, and returns what <code>step()</code> would
+     * have returned for it.
+     */
+    protected ExecutableSequence commitStep() {
+        throw new Error("parallel generation not supported for "
+                + this.getClass());
+    }
+
+    /**
+     * Whether the sequence was used as an input in another sequence (and can
+     * thus be thought of as subsumed by another sequence). This should only
+     * be called for subclasses that support this.
+     */
+    public boolean isSubsumed(Sequence s) {
+        throw new Error("subsumption not supported for " + this.getClass());
+    }
 }
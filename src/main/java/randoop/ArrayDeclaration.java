@@ -30,10 +30,10 @@ public final class ArrayDeclaration implements StatementKind, Serializable {
     // Cached values (for improved performance). Their values
     // are computed upon the first invocation of the respective
     // getter method.
-    private List<Class<?>> inputTypesCached;
+    private volatile List<Class<?>> inputTypesCached;
     private Class<?> outputTypeCached;
     private int hashCodeCached;
-    private boolean hashCodeComputed = false;
+    private volatile boolean hashCodeComputed = false;
 
     /**
      * @param elementType
@@ -80,10 +80,10 @@ public final class ArrayDeclaration implements StatementKind, Serializable {
      */
     public List<Class<?>> getInputTypes() {
         if (inputTypesCached == null) {
-            this.inputTypesCached = new ArrayList<Class<?>>(length);
+            List<Class<?>> inputTypes = new ArrayList<Class<?>>(length);
             for (int i = 0; i < length; i++)
-                inputTypesCached.add(elementType);
-            inputTypesCached = Collections.unmodifiableList(inputTypesCached);
+                inputTypes.add(elementType);
+            inputTypesCached = Collections.unmodifiableList(inputTypes);
         }
         return Collections.unmodifiableList(this.inputTypesCached);
     }
@@ -174,9 +174,9 @@ public final class ArrayDeclaration implements StatementKind, Serializable {
     @Override
     public int hashCode() {
         if (!hashCodeComputed) {
-            hashCodeComputed = true;
             hashCodeCached = this.elementType.hashCode();
             hashCodeCached += this.length * 17;
+            hashCodeComputed = true;
         }
         return hashCodeCached;
     }
@@ -4,7 +4,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import randoop.main.GenInputsAbstract;
 import randoop.util.PrimitiveTypes;
 import randoop.util.SimpleList;
 
@@ -27,7 +29,12 @@ import randoop.util.SimpleList;
  * passed via the constructor, (2) class literals, and (3) package literals. The
  * only different treatment of seed sequences is during calls to the
  * clearGeneratedSequences() method, which removes only general, non-seed
- * components from the collection.
+ * components from the collection, and when the collection exceeds
+ * <code>--component_limit</code> or <code>--component_type_limit</code>,
+ * which evict only non-seed components.
+ * 
+ * A component manager is thread-safe, so that parallel generation workers can
+ * share one (see SequenceCollection).
  */
 public class ComponentManager {
 
@@ -46,7 +53,12 @@ public class ComponentManager {
     // Seeds are all contained in gralComponents. This list
     // is kept to restore seeds if the user calls
     // clearGeneratedSequences().
-    private final Collection<Sequence> gralSeeds;
+    private final Set<Sequence> gralSeeds;
+
+    // The logical clock for Sequence.lastTimeUsed, advanced each time a
+    // sequence is added or used as an input. Unlike wall-clock times, it
+    // evicts the same components from run to run.
+    private final AtomicLong useClock = new AtomicLong();
 
     /**
      * Create an empty component manager, with an empty seed sequence set.
@@ -55,6 +67,7 @@ public class ComponentManager {
         gralComponents = new SequenceCollection();
         gralSeeds = Collections.unmodifiableSet(Collections
                 .<Sequence> emptySet());
+        setLimits();
     }
 
     /**
@@ -72,6 +85,21 @@ public class ComponentManager {
         }
         this.gralSeeds = Collections.unmodifiableSet(seedSet);
         gralComponents = new SequenceCollection(seedSet);
+        setLimits();
+    }
+
+    /**
+     * Create a component manager with the same seed sequences as the given
+     * one, but none of its other sequences.
+     */
+    public ComponentManager(ComponentManager other) {
+        this(other.gralSeeds);
+    }
+
+    private void setLimits() {
+        gralComponents.setLimits(GenInputsAbstract.component_limit,
+                GenInputsAbstract.component_type_limit,
+                gralSeeds);
     }
 
     /**
@@ -86,18 +114,46 @@ public class ComponentManager {
      * Add a component sequence.
      */
     public void addGeneratedSequence(Sequence sequence) {
+        sequence.lastTimeUsed = useClock.incrementAndGet();
         gralComponents.add(sequence);
     }
 
+    /**
+     * Records that the sequence was just used as an input to a new sequence,
+     * for evicting the least recently used components.
+     */
+    public void markUsed(Sequence sequence) {
+        sequence.lastTimeUsed = useClock.incrementAndGet();
+    }
+
     /**
      * Removes any components sequences added so far, except for seed sequences,
      * which are preserved.
      */
-    public void clearGeneratedSequences() {
+    public synchronized void clearGeneratedSequences() {
         gralComponents.clear();
         gralComponents.addAll(this.gralSeeds);
     }
 
+    /**
+     * Removes the generated components as clearGeneratedSequences() does, if
+     * the number of sequences stored is a multiple of the given number (see
+     * <code>--clear</code>). The test and the removal are done atomically, so
+     * that workers sharing this manager cannot clear it on a stale count.
+     */
+    public synchronized void clearGeneratedSequencesIfMultipleOf(int n) {
+        if (numGeneratedSequences() % n == 0)
+            clearGeneratedSequences();
+    }
+
+    /**
+     * Returns the number of components evicted to stay within
+     * <code>--component_limit</code> and <code>--component_type_limit</code>.
+     */
+    public int numEvictedSequences() {
+        return gralComponents.numEvicted();
+    }
+
     public Set<Sequence> getAllGeneratedSequences() {
         return gralComponents.getAllSequences();
     }
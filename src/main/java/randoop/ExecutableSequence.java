@@ -1,15 +1,14 @@
 package randoop;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+import arbitcheck.Verdict;
 import randoop.main.GenInputsAbstract;
-import randoop.util.ProgressDisplay;
+import randoop.util.OutputCapture;
 import randoop.util.Reflection;
 
 /**
@@ -110,9 +109,15 @@ public class ExecutableSequence implements Serializable {
     // (no code in this class sets its value).
     public long exectime = -1;
 
-    /** Output buffer used to capture the output from the executed sequence **/
-    private static ByteArrayOutputStream output_buffer = new ByteArrayOutputStream();
-    private static PrintStream ps_output_buffer = new PrintStream(output_buffer);
+    // The seed of the random stream of the generation worker that created
+    // this sequence (see --worker_seed), if it was recorded; null otherwise.
+    // Set by the generator, like gentime.
+    public Long workerSeed = null;
+
+    // The verdict on the last execution, if it has been computed (see
+    // arbitcheck.SequenceUtil.verdict); null otherwise. Cleared when the
+    // sequence is executed.
+    private transient Verdict verdict = null;
 
     // Re-initialize executionResults list.
     private void readObject(ObjectInputStream s) throws IOException,
@@ -237,9 +242,14 @@ public class ExecutableSequence implements Serializable {
     public String toCodeString() {
         // mark variables used in later statements
         boolean[] varUsed = new boolean[sequence.size()];
+        int[] inputIndices = new int[0];
         for (int i = 0; i < sequence.size(); i++) {
-            for (int index : sequence.getInputsAsAbsoluteIndices(i)) {
-                varUsed[index] = true;
+            int numInputs = sequence.getInputCount(i);
+            if (numInputs > inputIndices.length)
+                inputIndices = new int[numInputs];
+            sequence.getInputsAsAbsoluteIndices(i, inputIndices);
+            for (int j = 0; j < numInputs; j++) {
+                varUsed[inputIndices[j]] = true;
             }
         }
 
@@ -316,6 +326,10 @@ public class ExecutableSequence implements Serializable {
         for (int i = 0; i < sequence.size(); i++) {
             executionResults.theList.add(NotExecuted.create());
         }
+        verdict = null;
+
+        // Input indices of the current statement; reused across statements.
+        int[] inputIndices = new int[0];
 
         for (int i = 0; i < this.sequence.size(); i++) {
 
@@ -324,14 +338,17 @@ public class ExecutableSequence implements Serializable {
             }
 
             // Find and collect the input values to i-th statement.
-            List<Variable> inputs = sequence.getInputs(i);
-            Object[] inputVariables = new Object[inputs.size()];
+            int numInputs = sequence.getInputCount(i);
+            if (numInputs > inputIndices.length)
+                inputIndices = new int[numInputs];
+            sequence.getInputsAsAbsoluteIndices(i, inputIndices);
+            Object[] inputVariables = new Object[numInputs];
 
             // If a null value is implicitly passed to the statement (e.g., to
             // the receiver)
             // stop execution.
             if (!getRuntimeInputs(sequence, executionResults.theList, i,
-                    inputs, inputVariables))
+                    inputIndices, inputVariables))
                 break;
 
             executeStatement(sequence, executionResults.theList, i,
@@ -342,7 +359,10 @@ public class ExecutableSequence implements Serializable {
             }
 
             if (executionResults.get(i) instanceof ExceptionalExecution) {
-                if (stop_on_exception)
+                // An input rejected by an assumption of the property is
+                // discarded as soon as the exception is classified (see
+                // arbitcheck.CheckVisitor), so the rest is not worth running.
+                if (stop_on_exception || verdict == Verdict.DISCARD)
                     break;
             }
 
@@ -351,18 +371,84 @@ public class ExecutableSequence implements Serializable {
         }
     }
 
+    /**
+     * Like <code>execute(visitor)</code>, but instead of executing the
+     * statements, takes their outcomes from the given list, for example the
+     * outcomes of executing this sequence in another JVM. The visitor is
+     * invoked as if the statements were being executed, and execution stops
+     * where <code>execute(visitor)</code> would have stopped.
+     */
+    public void execute(ExecutionVisitor visitor,
+            List<ExecutionOutcome> outcomes) {
+        if (outcomes.size() != sequence.size())
+            throw new IllegalArgumentException("expected "
+                    + sequence.size() + " outcomes but got "
+                    + outcomes.size());
+
+        if (visitor != null) {
+            visitor.initialize(this);
+        }
+
+        executionResults.theList.clear();
+        for (int i = 0; i < sequence.size(); i++) {
+            executionResults.theList.add(NotExecuted.create());
+        }
+        verdict = null;
+
+        for (int i = 0; i < this.sequence.size(); i++) {
+
+            if (visitor != null) {
+                visitor.visitBefore(this, i);
+            }
+
+            if (outcomes.get(i) instanceof NotExecuted)
+                break;
+
+            executionResults.theList.set(i, outcomes.get(i));
+
+            if (visitor != null) {
+                visitor.visitAfter(this, i);
+            }
+
+            if (executionResults.get(i) instanceof ExceptionalExecution)
+                break;
+
+            if (hasFailure(i))
+                break;
+        }
+    }
+
     public static boolean getRuntimeInputs(Sequence s,
             List<ExecutionOutcome> outcome, int i, List<Variable> inputs,
             Object[] runtimeObjects) {
+        int[] inputIndices = new int[inputs.size()];
+        for (int ri = 0; ri < inputIndices.length; ri++) {
+            inputIndices[ri] = inputs.get(ri).getDeclIndex();
+        }
+        return getRuntimeInputs(s, outcome, i, inputIndices, runtimeObjects);
+    }
+
+    /**
+     * Like getRuntimeInputs(s, outcome, i, inputs, runtimeObjects), but takes
+     * the inputs as the indices of the statements that create them (see
+     * Sequence.getInputsAsAbsoluteIndices(int, int[])). Only the first
+     * runtimeObjects.length indices are used.
+     */
+    public static boolean getRuntimeInputs(Sequence s,
+            List<ExecutionOutcome> outcome, int i, int[] inputIndices,
+            Object[] runtimeObjects) {
 
-        Object[] ros = getRuntimeValuesForVars(inputs, outcome);
-        for (int ri = 0; ri < ros.length; ri++) {
-            runtimeObjects[ri] = ros[ri];
+        for (int ri = 0; ri < runtimeObjects.length; ri++) {
+            int creatingStatementIdx = inputIndices[ri];
+            assert outcome.get(creatingStatementIdx) instanceof NormalExecution : outcome
+                    .get(creatingStatementIdx).getClass();
+            runtimeObjects[ri] = ((NormalExecution) outcome
+                    .get(creatingStatementIdx)).getRuntimeValue();
         }
 
         for (int ri = 0; ri < runtimeObjects.length; ri++) {
             if (runtimeObjects[ri] == null) {
-                int creatingStatementIdx = inputs.get(ri).getDeclIndex();
+                int creatingStatementIdx = inputIndices[ri];
                 StatementKind creatingStatement = s
                         .getStatementKind(creatingStatementIdx);
 
@@ -403,32 +489,47 @@ public class ExecutableSequence implements Serializable {
             List<ExecutionOutcome> outcome, int index, Object[] inputVariables) {
         StatementKind statement = s.getStatementKind(index);
 
-        // Capture any output Syncronize with ProgressDisplay so that
-        // we don't capture its output as well.
-        synchronized (ProgressDisplay.print_synchro) {
-            PrintStream orig_out = System.out;
-            PrintStream orig_err = System.err;
-            if (GenInputsAbstract.capture_output) {
-                System.out.flush();
-                System.err.flush();
-                System.setOut(ps_output_buffer);
-                System.setErr(ps_output_buffer);
-            }
+        assert ((statement instanceof RMethod && !((RMethod) statement)
+                .isStatic()) ? inputVariables[0] != null : true);
 
-            assert ((statement instanceof RMethod && !((RMethod) statement)
-                    .isStatic()) ? inputVariables[0] != null : true);
+        // Exceptions thrown by the statement are not formatted here; the
+        // outcome keeps the exception itself.
 
-            ExecutionOutcome r = statement.execute(inputVariables,
-                    Globals.blackHole);
+        if (!GenInputsAbstract.capture_output) {
+            ExecutionOutcome r = statement.execute(inputVariables, null);
             assert r != null;
-            if (GenInputsAbstract.capture_output) {
-                System.setOut(orig_out);
-                System.setErr(orig_err);
-                r.set_output(output_buffer.toString());
-                output_buffer.reset();
-            }
             outcome.set(index, r);
+            return;
+        }
+
+        // Capture the output of this thread only, so that statements of
+        // different generation workers may still run concurrently, and the
+        // progress display is not captured.
+        OutputCapture.begin();
+        ExecutionOutcome r;
+        String output;
+        try {
+            r = statement.execute(inputVariables, null);
+        }
+        finally {
+            output = OutputCapture.end();
         }
+        assert r != null;
+        r.set_output(output);
+        outcome.set(index, r);
+    }
+
+    /**
+     * The verdict on the last execution of this sequence, or null if it has
+     * not been computed. Use arbitcheck.SequenceUtil.verdict, which computes
+     * it when needed.
+     */
+    public Verdict getVerdict() {
+        return verdict;
+    }
+
+    public void setVerdict(Verdict verdict) {
+        this.verdict = verdict;
     }
 
     /**
@@ -594,8 +695,8 @@ public class ExecutableSequence implements Serializable {
         for (int i = 0; i < this.sequence.size(); i++)
             if ((getResult(i) instanceof ExceptionalExecution)) {
                 ExceptionalExecution e = (ExceptionalExecution) getResult(i);
-                if (Reflection.canBeUsedAs(e.getException().getClass(),
-                        exceptionClass))
+                if (ForkedExecutor.isInstance(exceptionClass,
+                        e.getException()))
                     return i;
             }
         return -1;
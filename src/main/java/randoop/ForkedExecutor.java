@@ -0,0 +1,711 @@
+package randoop;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import plume.Options;
+import plume.Options.ArgException;
+import randoop.main.GenInputsAbstract;
+import randoop.util.ForkedJVMDiedException;
+import randoop.util.Log;
+import randoop.util.ReflectionExecutor;
+import randoop.util.TimeoutExceededException;
+import arbitcheck.CheckMonitor;
+import arbitcheck.SequenceUtil;
+import arbitcheck.Verdict;
+
+/**
+ * Executes sequences in a pool of child JVMs, so that code under test that
+ * hangs, calls System.exit or runs out of memory cannot end the Randoop
+ * process (see the --fork option).
+ *
+ * Sequences are sent to a child in batches, in their parseable form (see
+ * <code>Sequence.toParseableString()</code>). The child executes them one by
+ * one and sends back a compact record of the outcome of each statement:
+ * primitive and String values are sent as they are, other values only by
+ * their type. A statement that runs longer than --timeout milliseconds is
+ * reported as a TimeoutExceededException, and a statement during which the
+ * child exits as a ForkedJVMDiedException; in both cases the child is replaced
+ * by a new one and the rest of the batch is executed there.
+ *
+ * No class of the code under test is loaded in the parent. An exception
+ * thrown in a child comes back as a RemoteException, which carries the names
+ * of the exception's class and supertypes; classify exceptions with
+ * <code>isInstance</code>, which understands those.
+ *
+ * The <code>main</code> method of this class is the entry point of the child
+ * JVMs.
+ */
+public final class ForkedExecutor {
+
+    // Messages from a child to the parent.
+    private static final int STARTED = 's'; // started executing a statement
+    private static final int DONE = 'd'; // finished a sequence; outcomes follow
+    private static final int UNPARSEABLE = 'u'; // could not parse a sequence
+
+    // Outcome records.
+    private static final int NORMAL = 'N';
+    private static final int EXCEPTIONAL = 'E';
+    private static final int NOT_EXECUTED = 'X';
+
+    // Value records.
+    private static final int NULL = 'n';
+    private static final int STRING = 'T';
+    private static final int MONITOR = 'M';
+    private static final int OBJECT = 'O';
+
+    /**
+     * Stands for a value that was created in a child JVM and cannot be sent to
+     * the parent.
+     */
+    public static final class RemoteValue {
+
+        private final String className;
+
+        public RemoteValue(String className) {
+            this.className = className;
+        }
+
+        /**
+         * The name of the class of the value, or null if not known.
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public String toString() {
+            return "<object of type " + className + " in child JVM>";
+        }
+    }
+
+    /**
+     * Stands for an exception that was thrown in a child JVM. Its class is not
+     * loaded in the parent, as that would run code under test there; the names
+     * of the class and of its supertypes are kept instead.
+     */
+    public static final class RemoteException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String className;
+        private final Set<String> typeNames;
+
+        public RemoteException(String className, String message,
+                Set<String> typeNames) {
+            super(message);
+            this.className = className;
+            this.typeNames = typeNames;
+        }
+
+        /**
+         * The name of the class of the exception.
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * Whether the exception, in the child JVM, was an instance of the
+         * given class.
+         */
+        public boolean isInstanceOf(Class<?> c) {
+            return typeNames.contains(c.getName());
+        }
+
+        @Override
+        public String toString() {
+            String message = getMessage();
+            return message == null ? className : className + ": " + message;
+        }
+    }
+
+    /**
+     * Whether the exception is an instance of the given class. Unlike
+     * <code>c.isInstance(e)</code>, goes by the original class of an exception
+     * thrown in a child JVM.
+     */
+    public static boolean isInstance(Class<?> c, Throwable e) {
+        if (e instanceof RemoteException)
+            return ((RemoteException) e).isInstanceOf(c);
+        return c.isInstance(e);
+    }
+
+    // A child JVM, and the streams used to talk to it.
+    private static final class Child {
+        final Process process;
+        final DataOutputStream toChild;
+        final DataInputStream fromChild;
+
+        // Used by the watchdog.
+        volatile boolean busy = false;
+        volatile long lastProgress = 0;
+        volatile boolean timedOut = false;
+
+        Child(Process process) {
+            this.process = process;
+            this.toChild = new DataOutputStream(new BufferedOutputStream(
+                    process.getOutputStream()));
+            this.fromChild = new DataInputStream(new BufferedInputStream(
+                    process.getInputStream()));
+        }
+
+        void progress() {
+            lastProgress = System.currentTimeMillis();
+        }
+    }
+
+    // All children, and the children not currently executing a batch.
+    private final List<Child> children = new CopyOnWriteArrayList<Child>();
+    private final BlockingQueue<Child> idleChildren = new LinkedBlockingQueue<Child>();
+
+    private final Thread watchdog;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Starts the given number of child JVMs.
+     */
+    public ForkedExecutor(int numJvms) {
+        if (numJvms <= 0)
+            throw new IllegalArgumentException("numJvms must be positive: "
+                    + numJvms);
+        for (int i = 0; i < numJvms; i++) {
+            Child c = startChild();
+            children.add(c);
+            idleChildren.add(c);
+        }
+        watchdog = new Thread("fork watchdog") {
+            @Override
+            public void run() {
+                watch();
+            }
+        };
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Executes the given sequences in one of the child JVMs, waiting for a
+     * child to become available if all of them are busy. The visitor is
+     * invoked on each sequence as its outcomes become known (see
+     * <code>ExecutableSequence.execute(visitor, outcomes)</code>).
+     */
+    public void execute(List<ExecutableSequence> batch,
+            ExecutionVisitor visitor) {
+        Child child;
+        try {
+            child = idleChildren.take();
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(
+                    "Interrupted while waiting for a child JVM.");
+        }
+        try {
+            int next = 0;
+            boolean fresh = false;
+            while (next < batch.size()) {
+                List<ExecutableSequence> rest = batch.subList(next,
+                        batch.size());
+                int done = execute(child, rest, visitor);
+                if (done < 0) {
+                    // The child died while idle; send the batch to a new one.
+                    if (fresh)
+                        throw new Error("Child JVM exited on startup.");
+                    child = replace(child);
+                    fresh = true;
+                    continue;
+                }
+                next += done;
+                fresh = false;
+                if (next < batch.size()) {
+                    // The child died while executing the sequence at index
+                    // next, whose outcome has been recorded; carry on with the
+                    // following ones in a new child.
+                    child = replace(child);
+                    next++;
+                }
+            }
+        }
+        finally {
+            idleChildren.add(child);
+        }
+    }
+
+    /**
+     * Stops all child JVMs.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Child c : children) {
+            try {
+                c.toChild.close();
+            }
+            catch (IOException e) {
+                // Ignore: the child is destroyed below anyway.
+            }
+            c.process.destroy();
+        }
+    }
+
+    // Sends the batch to the child and records the outcomes it sends back.
+    // Returns the number of sequences whose execution was completed; if
+    // smaller than the batch size, the child died while executing the
+    // sequence at that index and that sequence's outcome has been recorded.
+    // Returns -1 if the batch could not be sent.
+    private int execute(Child child, List<ExecutableSequence> batch,
+            ExecutionVisitor visitor) {
+
+        List<String> sequences = new ArrayList<String>(batch.size());
+        for (ExecutableSequence es : batch) {
+            sequences.add(es.sequence.toParseableString());
+        }
+
+        child.timedOut = false;
+        child.progress();
+        child.busy = true;
+        try {
+            try {
+                child.toChild.writeInt(sequences.size());
+                for (String s : sequences) {
+                    writeString(child.toChild, s);
+                }
+                child.toChild.flush();
+            }
+            catch (IOException e) {
+                return -1;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                ExecutableSequence es = batch.get(i);
+                int started = 0;
+                try {
+                    int message;
+                    while ((message = child.fromChild.read()) == STARTED) {
+                        child.progress();
+                        started++;
+                    }
+                    child.progress();
+                    if (message == UNPARSEABLE) {
+                        // A bug in a toParseableString/parse pair. The
+                        // sequence is not executed here, which would defeat
+                        // the isolation; it is recorded as not executed and,
+                        // if it is a check, discarded rather than failed.
+                        if (Log.isLoggingOn())
+                            Log.logLine("Discarding sequence that the child JVM could not parse: "
+                                    + es.sequence);
+                        es.execute(visitor, notExecutedOutcomes(es.sequence));
+                        if (SequenceUtil.isChecked(es.sequence))
+                            es.setVerdict(Verdict.DISCARD);
+                        continue;
+                    }
+                    if (message != DONE)
+                        throw new EOFException();
+                    es.execute(visitor, readOutcomes(child.fromChild));
+                }
+                catch (IOException e) {
+                    es.execute(visitor, deathOutcomes(es.sequence,
+                            Math.max(0, started - 1), child.timedOut));
+                    return i;
+                }
+            }
+            return batch.size();
+        }
+        finally {
+            child.busy = false;
+        }
+    }
+
+    // Outcomes for a sequence none of whose statements were executed.
+    private static List<ExecutionOutcome> notExecutedOutcomes(Sequence s) {
+        List<ExecutionOutcome> outcomes = new ArrayList<ExecutionOutcome>(
+                s.size());
+        for (int i = 0; i < s.size(); i++) {
+            outcomes.add(NotExecuted.create());
+        }
+        return outcomes;
+    }
+
+    // Outcomes for a sequence during whose execution the child died. The
+    // values created by the statements before the one that was running are
+    // unknown.
+    private static List<ExecutionOutcome> deathOutcomes(Sequence s,
+            int running, boolean timedOut) {
+        List<ExecutionOutcome> outcomes = new ArrayList<ExecutionOutcome>(
+                s.size());
+        for (int i = 0; i < running; i++) {
+            outcomes.add(new NormalExecution(new RemoteValue(null), 0));
+        }
+        Throwable e = timedOut ? new TimeoutExceededException()
+                : new ForkedJVMDiedException();
+        outcomes.add(new ExceptionalExecution(e, 0));
+        for (int i = running + 1; i < s.size(); i++) {
+            outcomes.add(NotExecuted.create());
+        }
+        return outcomes;
+    }
+
+    private Child replace(Child child) {
+        child.process.destroy();
+        Child c = startChild();
+        children.remove(child);
+        children.add(c);
+        return c;
+    }
+
+    // Kills children that have made no progress for longer than the timeout.
+    private void watch() {
+        long period = Math.max(10, Math.min(100, ReflectionExecutor.timeout / 10));
+        while (!shutdown) {
+            try {
+                Thread.sleep(period);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Child c : children) {
+                if (c.busy && now - c.lastProgress > ReflectionExecutor.timeout) {
+                    c.timedOut = true;
+                    c.process.destroy();
+                }
+            }
+        }
+    }
+
+    private static Child startChild() {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        command.add("-Xmx" + GenInputsAbstract.mem_megabytes + "m");
+        if (GenInputsAbstract.agent != null) {
+            for (String arg : GenInputsAbstract.agent.trim().split("\\s+")) {
+                command.add(arg);
+            }
+        }
+        for (String prop : GenInputsAbstract.system_props) {
+            command.add("-D" + prop);
+        }
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ForkedExecutor.class.getName());
+        // The options that affect how the child executes sequences.
+        command.add("--capture_output=" + GenInputsAbstract.capture_output);
+        command.add("--debug_checks=" + GenInputsAbstract.debug_checks);
+        command.add("--usethreads=" + ReflectionExecutor.usethreads);
+        command.add("--timeout=" + ReflectionExecutor.timeout);
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command).start();
+        }
+        catch (IOException e) {
+            throw new Error("Could not start child JVM: " + command, e);
+        }
+        // The child's stdout is used for outcomes; output of the code under
+        // test goes to its stderr, which we pass on.
+        drain(process.getErrorStream(), System.err);
+        return new Child(process);
+    }
+
+    private static void drain(final InputStream in, final PrintStream out) {
+        Thread t = new Thread("fork output") {
+            @Override
+            public void run() {
+                byte[] buf = new byte[4096];
+                try {
+                    int n;
+                    while ((n = in.read(buf)) != -1) {
+                        out.write(buf, 0, n);
+                    }
+                }
+                catch (IOException e) {
+                    // The child is gone.
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static List<ExecutionOutcome> readOutcomes(DataInputStream in)
+            throws IOException {
+        int size = in.readInt();
+        List<ExecutionOutcome> outcomes = new ArrayList<ExecutionOutcome>(size);
+        for (int i = 0; i < size; i++) {
+            int kind = in.readByte();
+            if (kind == NORMAL) {
+                Object value = readValue(in);
+                outcomes.add(new NormalExecution(value, in.readLong()));
+            }
+            else if (kind == EXCEPTIONAL) {
+                String className = readString(in);
+                String message = in.readBoolean() ? readString(in) : null;
+                int count = in.readInt();
+                Set<String> typeNames = new HashSet<String>(count * 2);
+                for (int j = 0; j < count; j++) {
+                    typeNames.add(readString(in));
+                }
+                outcomes.add(new ExceptionalExecution(new RemoteException(
+                        className, message, typeNames), in.readLong()));
+            }
+            else if (kind == NOT_EXECUTED) {
+                outcomes.add(NotExecuted.create());
+            }
+            else {
+                throw new IOException("unexpected outcome record " + kind);
+            }
+        }
+        return outcomes;
+    }
+
+    private static void writeOutcomes(DataOutputStream out,
+            ExecutableSequence es) throws IOException {
+        out.writeInt(es.sequence.size());
+        for (int i = 0; i < es.sequence.size(); i++) {
+            ExecutionOutcome o = es.getResult(i);
+            if (o instanceof NormalExecution) {
+                out.writeByte(NORMAL);
+                writeValue(out, ((NormalExecution) o).getRuntimeValue());
+                out.writeLong(o.getExecutionTime());
+            }
+            else if (o instanceof ExceptionalExecution) {
+                Throwable e = ((ExceptionalExecution) o).getException();
+                out.writeByte(EXCEPTIONAL);
+                writeString(out, e.getClass().getName());
+                String message = null;
+                try {
+                    message = e.getMessage();
+                }
+                catch (Throwable t) {
+                    // getMessage is code under test.
+                }
+                out.writeBoolean(message != null);
+                if (message != null)
+                    writeString(out, message);
+                Set<String> typeNames = typeNames(e.getClass());
+                out.writeInt(typeNames.size());
+                for (String name : typeNames) {
+                    writeString(out, name);
+                }
+                out.writeLong(o.getExecutionTime());
+            }
+            else {
+                out.writeByte(NOT_EXECUTED);
+            }
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object v)
+            throws IOException {
+        if (v == null) {
+            out.writeByte(NULL);
+        }
+        else if (v instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) v);
+        }
+        else if (v instanceof Boolean) {
+            out.writeByte('Z');
+            out.writeBoolean((Boolean) v);
+        }
+        else if (v instanceof Byte) {
+            out.writeByte('B');
+            out.writeByte((Byte) v);
+        }
+        else if (v instanceof Short) {
+            out.writeByte('S');
+            out.writeShort((Short) v);
+        }
+        else if (v instanceof Character) {
+            out.writeByte('C');
+            out.writeChar((Character) v);
+        }
+        else if (v instanceof Integer) {
+            out.writeByte('I');
+            out.writeInt((Integer) v);
+        }
+        else if (v instanceof Long) {
+            out.writeByte('J');
+            out.writeLong((Long) v);
+        }
+        else if (v instanceof Float) {
+            out.writeByte('F');
+            out.writeFloat((Float) v);
+        }
+        else if (v instanceof Double) {
+            out.writeByte('D');
+            out.writeDouble((Double) v);
+        }
+        else if (v instanceof CheckMonitor) {
+            out.writeByte(MONITOR);
+            writeString(out, ((CheckMonitor) v).getLabel());
+        }
+        else {
+            out.writeByte(OBJECT);
+            writeString(out, v.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int kind = in.readByte();
+        switch (kind) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case 'Z':
+            return in.readBoolean();
+        case 'B':
+            return in.readByte();
+        case 'S':
+            return in.readShort();
+        case 'C':
+            return in.readChar();
+        case 'I':
+            return in.readInt();
+        case 'J':
+            return in.readLong();
+        case 'F':
+            return in.readFloat();
+        case 'D':
+            return in.readDouble();
+        case MONITOR:
+            CheckMonitor monitor = new CheckMonitor();
+            String label = readString(in);
+            if (label.length() > 0)
+                monitor.classify(true, label);
+            return monitor;
+        case OBJECT:
+            return new RemoteValue(readString(in));
+        default:
+            throw new IOException("unexpected value record " + kind);
+        }
+    }
+
+    // The names of the class, its superclasses and all the interfaces they
+    // implement.
+    private static Set<String> typeNames(Class<?> c) {
+        Set<String> names = new LinkedHashSet<String>();
+        addTypeNames(c, names);
+        return names;
+    }
+
+    private static void addTypeNames(Class<?> c, Set<String> names) {
+        if (c == null || !names.add(c.getName()))
+            return;
+        addTypeNames(c.getSuperclass(), names);
+        for (Class<?> i : c.getInterfaces()) {
+            addTypeNames(i, names);
+        }
+    }
+
+    // Strings may be longer than writeUTF allows.
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Entry point of a child JVM. Reads batches of sequences from standard
+     * input, executes them, and writes their outcomes to standard output,
+     * until standard input is closed. The arguments are the parent's values
+     * of the options that affect execution.
+     */
+    public static void main(String[] args) throws IOException {
+
+        try {
+            new Options(GenInputsAbstract.class, ReflectionExecutor.class)
+                    .parse(args);
+        }
+        catch (ArgException e) {
+            System.err.println("Child JVM: " + e.getMessage());
+            System.exit(1);
+        }
+
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(
+                        FileDescriptor.out)));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                System.in));
+
+        // Keep output of the code under test out of the outcome stream.
+        System.setOut(System.err);
+
+        ExecutionVisitor progress = new ExecutionVisitor() {
+            @Override
+            public void initialize(ExecutableSequence executableSequence) {
+            }
+
+            @Override
+            public void visitBefore(ExecutableSequence sequence, int i) {
+                try {
+                    out.writeByte(STARTED);
+                    out.flush();
+                }
+                catch (IOException e) {
+                    // The parent is gone.
+                    System.exit(1);
+                }
+            }
+
+            @Override
+            public void visitAfter(ExecutableSequence sequence, int i) {
+            }
+        };
+
+        while (true) {
+            int size;
+            try {
+                size = in.readInt();
+            }
+            catch (EOFException e) {
+                return;
+            }
+            List<String> batch = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) {
+                batch.add(readString(in));
+            }
+            for (String s : batch) {
+                Sequence sequence;
+                try {
+                    sequence = Sequence.parse(s);
+                }
+                catch (Throwable e) {
+                    out.writeByte(UNPARSEABLE);
+                    out.flush();
+                    continue;
+                }
+                ExecutableSequence es = new ExecutableSequence(sequence);
+                es.execute(progress);
+                out.writeByte(DONE);
+                writeOutcomes(out, es);
+                out.flush();
+            }
+        }
+    }
+}
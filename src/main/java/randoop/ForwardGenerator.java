@@ -2,17 +2,21 @@ package randoop;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import plume.Option;
+import plume.OptionGroup;
 import randoop.main.GenInputsAbstract;
 import randoop.util.ArrayListSimpleList;
+import randoop.util.FingerprintSet;
 import randoop.util.ListOfLists;
 import randoop.util.Log;
 import randoop.util.MultiMap;
 import randoop.util.PrimitiveTypes;
-import randoop.util.Randomness;
 import randoop.util.Reflection;
 import randoop.util.Reflection.Match;
 import randoop.util.SimpleList;
@@ -25,14 +29,34 @@ import arbitcheck.SequenceUtil;
  */
 public class ForwardGenerator extends AbstractGenerator {
 
+    /**
+     * Detect duplicate sequences by their fingerprints (see
+     * Sequence.fingerprint()) instead of keeping every sequence ever
+     * generated. Up to this many fingerprints are kept exactly; beyond that,
+     * fixed-size Bloom filters are used, which discard about one new sequence
+     * in a thousand as a duplicate, and forget fingerprints older than the
+     * last 4 &times; this many, so an old duplicate can be generated again.
+     * 0 means keep all sequences.
+     */
+    @OptionGroup("Detecting duplicate sequences")
+    @Option("Detect duplicate sequences using at most <int> exact fingerprints, then a Bloom filter (0: keep all sequences)")
+    public static int fingerprint_limit = 0;
+
     /**
      * The set of ALL sequences ever generated, including sequences that were
-     * executed and then discarded.
+     * executed and then discarded. Empty if --fingerprint_limit is given, in
+     * which case only the sequences' fingerprints are kept, in
+     * allFingerprints.
      */
     public final Set<Sequence> allSequences;
 
-    /** Sequences that are used in other sequences (and are thus redundant) **/
-    public Set<Sequence> subsumed_sequences = new LinkedHashSet<Sequence>();
+    private final FingerprintSet allFingerprints;
+
+    // The fingerprints of the sequences that are used in other sequences (and
+    // are thus redundant). Only fingerprints are kept, so that sequences
+    // evicted from the components can be freed; like allFingerprints, the
+    // set is bounded if --fingerprint_limit is given.
+    private final FingerprintSet subsumedFingerprints;
 
     // For testing purposes only. If Globals.randooptestrun==false then the
     // array
@@ -55,6 +79,18 @@ public class ForwardGenerator extends AbstractGenerator {
     protected ObjectCache objectCache = new ObjectCache(
             new EqualsMethodMatcher());
 
+    // Executes sequences in child JVMs when --fork is given. Created when
+    // exploration starts, and shared with the parallel workers.
+    private ForkedExecutor forkedExecutor = null;
+
+    // Sequences of the last batch executed in a child JVM that have not been
+    // returned by step() yet.
+    private final LinkedList<ExecutableSequence> forkedResults = new LinkedList<ExecutableSequence>();
+
+    // The steps prepared by prepareRound that commitStep has not committed
+    // yet, in order. A null entry is a step that created no new sequence.
+    private final LinkedList<Candidate> preparedSteps = new LinkedList<Candidate>();
+
     public void setObjectCache(ObjectCache newCache) {
         if (newCache == null)
             throw new IllegalArgumentException();
@@ -71,10 +107,71 @@ public class ForwardGenerator extends AbstractGenerator {
 
         this.allSequences = new LinkedHashSet<Sequence>();
 
+        if (fingerprint_limit > 0) {
+            this.allFingerprints = new FingerprintSet(fingerprint_limit);
+            this.subsumedFingerprints = new FingerprintSet(fingerprint_limit);
+        }
+        else {
+            this.allFingerprints = null;
+            this.subsumedFingerprints = new FingerprintSet(Integer.MAX_VALUE);
+        }
+
         initializeRuntimePrimitivesSeen();
 
     }
 
+    // The workers created by newWorker with --isolate_workers, whose
+    // sequence sets are their own.
+    private final List<ForwardGenerator> isolatedWorkers = new ArrayList<ForwardGenerator>();
+
+    // Creates a worker for parallel generation. The worker shares the
+    // coordinator's execution visitors and forked executor. An isolated
+    // worker has its own component manager and sequence sets, as if it were
+    // a generator of its own. Otherwise the worker shares the coordinator's;
+    // the component manager is thread-safe, and the other shared state is
+    // only accessed while holding the lock of allSequences.
+    private ForwardGenerator(ForwardGenerator coordinator, boolean isolated) {
+
+        super(new ArrayList<StatementKind>(coordinator.statements),
+                coordinator.maxTimeMillis, coordinator.maxSequences,
+                isolated ? new ComponentManager(coordinator.componentManager)
+                        : coordinator.componentManager, null, null,
+                coordinator.outputTestFilters);
+
+        if (isolated) {
+            this.allSequences = new LinkedHashSet<Sequence>();
+            if (fingerprint_limit > 0) {
+                this.allFingerprints = new FingerprintSet(fingerprint_limit);
+                this.subsumedFingerprints = new FingerprintSet(
+                        fingerprint_limit);
+            }
+            else {
+                this.allFingerprints = null;
+                this.subsumedFingerprints = new FingerprintSet(
+                        Integer.MAX_VALUE);
+            }
+            initializeRuntimePrimitivesSeen();
+        }
+        else {
+            this.allSequences = coordinator.allSequences;
+            this.allFingerprints = coordinator.allFingerprints;
+            this.subsumedFingerprints = coordinator.subsumedFingerprints;
+            this.runtimePrimitivesSeen = coordinator.runtimePrimitivesSeen;
+        }
+        this.executionVisitor.visitors
+                .addAll(coordinator.executionVisitor.visitors);
+        this.forkedExecutor = coordinator.forkedExecutor;
+    }
+
+    @Override
+    protected AbstractGenerator newWorker(int index) {
+        ForwardGenerator worker = new ForwardGenerator(this,
+                GenInputsAbstract.isolate_workers);
+        if (GenInputsAbstract.isolate_workers)
+            isolatedWorkers.add(worker);
+        return worker;
+    }
+
     /**
      * The runtimePrimitivesSeen set contains primitive values seen during
      * generation/execution and is used to determine new values that should be
@@ -93,18 +190,54 @@ public class ForwardGenerator extends AbstractGenerator {
 
     @Override
     public int numSequences() {
-        return allSequences.size();
+        int n = allFingerprints != null ? allFingerprints.size()
+                : allSequences.size();
+        for (ForwardGenerator worker : isolatedWorkers) {
+            n += worker.numSequences();
+        }
+        return n;
+    }
+
+    @Override
+    public int numEvictedComponents() {
+        int n = super.numEvictedComponents();
+        for (ForwardGenerator worker : isolatedWorkers) {
+            n += worker.numEvictedComponents();
+        }
+        return n;
+    }
+
+    @Override
+    public void explore() {
+        if (GenInputsAbstract.fork && !GenInputsAbstract.dontexecute) {
+            int jvms = GenInputsAbstract.fork_jvms > 0 ? GenInputsAbstract.fork_jvms
+                    : GenInputsAbstract.workers;
+            forkedExecutor = new ForkedExecutor(jvms);
+        }
+        try {
+            super.explore();
+        }
+        finally {
+            if (forkedExecutor != null) {
+                forkedExecutor.shutdown();
+                forkedExecutor = null;
+            }
+        }
     }
 
     public ExecutableSequence step() {
 
-        long startTime = System.nanoTime();
+        if (forkedExecutor != null) {
+            return stepForked();
+        }
 
-        if (componentManager.numGeneratedSequences() % GenInputsAbstract.clear == 0)
-            componentManager.clearGeneratedSequences();
+        long startTime = System.nanoTime();
 
         ExecutableSequence eSeq = null;
 
+        componentManager
+                .clearGeneratedSequencesIfMultipleOf(GenInputsAbstract.clear);
+
         eSeq = createNewUniqueSequence();
         if (eSeq == null) {
             return null;
@@ -130,21 +263,189 @@ public class ForwardGenerator extends AbstractGenerator {
         eSeq.exectime = endTime - startTime;
         startTime = endTime; // reset start time.
 
-        processSequence(eSeq);
+        addExecutedSequence(eSeq);
 
-        if (eSeq.sequence.hasActiveFlags()) {
-            // Optimization -- don't use objects checked to extend sequence
-            if (!SequenceUtil.isChecked(eSeq.sequence)) {
-                componentManager.addGeneratedSequence(eSeq.sequence);
+        endTime = System.nanoTime();
+        gentime += endTime - startTime;
+        eSeq.gentime = gentime;
+
+        return eSeq;
+
+    }
+
+    // With --fork, creates up to fork_batch new sequences at once, executes
+    // them in a child JVM in a single round trip, and returns them one per
+    // step.
+    private ExecutableSequence stepForked() {
+
+        if (!forkedResults.isEmpty()) {
+            return forkedResults.removeFirst();
+        }
+
+        long startTime = System.nanoTime();
+
+        List<ExecutableSequence> batch = new ArrayList<ExecutableSequence>();
+
+        componentManager
+                .clearGeneratedSequencesIfMultipleOf(GenInputsAbstract.clear);
+
+        for (int i = 0; i < GenInputsAbstract.fork_batch; i++) {
+            ExecutableSequence eSeq = createNewUniqueSequence();
+            if (eSeq != null) {
+                batch.add(eSeq);
             }
         }
 
+        if (batch.isEmpty()) {
+            return null;
+        }
+
+        long endTime = System.nanoTime();
+        long gentime = endTime - startTime;
+        startTime = endTime; // reset start time.
+
+        forkedExecutor.execute(batch, executionVisitor);
+
+        endTime = System.nanoTime();
+        long exectime = endTime - startTime;
+        startTime = endTime; // reset start time.
+
+        for (ExecutableSequence eSeq : batch) {
+            addExecutedSequence(eSeq);
+        }
+
         endTime = System.nanoTime();
         gentime += endTime - startTime;
-        eSeq.gentime = gentime;
+
+        // The sequences of a batch share its times evenly.
+        for (ExecutableSequence eSeq : batch) {
+            eSeq.gentime = gentime / batch.size();
+            eSeq.exectime = exectime / batch.size();
+        }
+
+        forkedResults.addAll(batch);
+        return forkedResults.removeFirst();
+    }
+
+    // Creates and executes the sequences of a round from the components as
+    // they are now. Only this worker's own state is changed: the sequences
+    // are checked against the shared sets without adding them, which is
+    // safe because no worker commits while a round is being prepared.
+    @Override
+    protected void prepareRound(int steps) {
+
+        preparedSteps.clear();
+
+        List<ExecutableSequence> created = new ArrayList<ExecutableSequence>();
+        Set<Sequence> createdSequences = new HashSet<Sequence>();
+
+        for (int i = 0; i < steps; i++) {
+            long startTime = System.nanoTime();
+            Candidate candidate = createCandidate();
+            if (candidate != null
+                    && (isKnown(candidate.sequence) || !createdSequences
+                            .add(candidate.sequence))) {
+                if (Log.isLoggingOn())
+                    Log.logLine("Sequence discarded because the same sequence was previously created.");
+                candidate = null;
+            }
+            if (candidate != null) {
+                candidate.eSeq = new ExecutableSequence(candidate.sequence);
+                candidate.eSeq.gentime = System.nanoTime() - startTime;
+                created.add(candidate.eSeq);
+            }
+            preparedSteps.add(candidate);
+        }
+
+        if (!GenInputsAbstract.dontexecute) {
+            executeRound(created);
+        }
+    }
+
+    // Executes the sequences created for a round, in batches of fork_batch
+    // in a child JVM with --fork.
+    private void executeRound(List<ExecutableSequence> created) {
+        if (forkedExecutor != null) {
+            for (int from = 0; from < created.size(); from += GenInputsAbstract.fork_batch) {
+                List<ExecutableSequence> batch = created.subList(from,
+                        Math.min(from + GenInputsAbstract.fork_batch,
+                                created.size()));
+                long startTime = System.nanoTime();
+                forkedExecutor.execute(batch, executionVisitor);
+                long exectime = System.nanoTime() - startTime;
+                // The sequences of a batch share its time evenly.
+                for (ExecutableSequence eSeq : batch) {
+                    eSeq.exectime = exectime / batch.size();
+                }
+            }
+        }
+        else {
+            for (ExecutableSequence eSeq : created) {
+                AbstractGenerator.currSeq = eSeq.sequence;
+                long startTime = System.nanoTime();
+                eSeq.execute(executionVisitor);
+                eSeq.exectime = System.nanoTime() - startTime;
+            }
+        }
+    }
+
+    @Override
+    protected ExecutableSequence commitStep() {
+
+        componentManager
+                .clearGeneratedSequencesIfMultipleOf(GenInputsAbstract.clear);
+
+        Candidate candidate = preparedSteps.removeFirst();
+        if (candidate == null) {
+            return null;
+        }
+
+        long startTime = System.nanoTime();
+
+        // A worker committed earlier may have created the same sequence in
+        // this round.
+        synchronized (allSequences) {
+            if (!claim(candidate)) {
+                return null;
+            }
+        }
+
+        ExecutableSequence eSeq = candidate.eSeq;
+
+        if (GenInputsAbstract.dontexecute) {
+            this.componentManager.addGeneratedSequence(eSeq.sequence);
+            return null;
+        }
+
+        addExecutedSequence(eSeq);
+
+        eSeq.gentime += System.nanoTime() - startTime;
 
         return eSeq;
+    }
 
+    // Whether the sequence was already generated. Must not be called while
+    // another worker may be adding sequences.
+    private boolean isKnown(Sequence sequence) {
+        if (allFingerprints != null) {
+            return allFingerprints.contains(sequence.fingerprint());
+        }
+        return allSequences.contains(sequence);
+    }
+
+    // Determines the active indices of an executed sequence and adds it to
+    // the components.
+    private void addExecutedSequence(ExecutableSequence eSeq) {
+        synchronized (allSequences) {
+            processSequence(eSeq);
+        }
+
+        if (eSeq.sequence.hasActiveFlags()) {
+            // Optimization -- don't use objects checked to extend sequence
+            if (!SequenceUtil.isChecked(eSeq.sequence)) {
+                componentManager.addGeneratedSequence(eSeq.sequence);
+            }
+        }
     }
 
     public Set<Sequence> allSequences() {
@@ -252,6 +553,43 @@ public class ForwardGenerator extends AbstractGenerator {
      */
     private ExecutableSequence createNewUniqueSequence() {
 
+        Candidate candidate = createCandidate();
+        if (candidate == null) {
+            return null;
+        }
+
+        // Input selection only reads the component manager, which is
+        // thread-safe; the sets claim updates are shared with the other
+        // workers.
+        synchronized (allSequences) {
+            if (!claim(candidate)) {
+                return null;
+            }
+        }
+
+        return new ExecutableSequence(candidate.sequence);
+    }
+
+    // A new sequence, with the component sequences it extends, before it is
+    // known to be unique.
+    private static final class Candidate {
+        final Sequence sequence;
+        final List<Sequence> inputs;
+
+        // Set when the candidate is executed ahead of its commit.
+        ExecutableSequence eSeq = null;
+
+        Candidate(Sequence sequence, List<Sequence> inputs) {
+            this.sequence = sequence;
+            this.inputs = inputs;
+        }
+    }
+
+    // Extends randomly chosen components with a randomly chosen statement.
+    // Returns null if no sequence could be created. Only this generator's own
+    // state is changed.
+    private Candidate createCandidate() {
+
         if (Log.isLoggingOn())
             Log.logLine("-------------------------------------------");
 
@@ -261,7 +599,7 @@ public class ForwardGenerator extends AbstractGenerator {
             return null;
 
         // Select a StatementInfo
-        statement = Randomness.randomMember(this.statements);
+        statement = random.randomMember(this.statements);
         if (Log.isLoggingOn())
             Log.logLine("Selected statement: " + statement.toString());
 
@@ -287,9 +625,9 @@ public class ForwardGenerator extends AbstractGenerator {
 
         // With .5 probability, do a primitive value heuristic.
         if (GenInputsAbstract.repeat_heuristic
-                && Randomness.nextRandomInt(10) == 0) {
-            int times = Randomness.nextRandomInt(100);
-            newSequence = newSequence.repeatLast(times);
+                && random.nextRandomInt(10) == 0) {
+            int times = random.nextRandomInt(100);
+            newSequence = newSequence.repeatLast(times, random);
             if (Log.isLoggingOn())
                 Log.log(">>>" + times + newSequence.toCodeString());
         }
@@ -309,18 +647,34 @@ public class ForwardGenerator extends AbstractGenerator {
             return null;
         }
 
+        return new Candidate(newSequence, sequences.sequences);
+    }
+
+    // Adds the candidate's sequence to the sequences generated, and records
+    // its inputs as used, unless the same sequence was generated before.
+    // Returns whether the sequence was new. Must be called holding the lock
+    // of allSequences.
+    private boolean claim(Candidate candidate) {
+
+        Sequence newSequence = candidate.sequence;
+
         randoopConsistencyTests(newSequence);
 
-        if (this.allSequences.contains(newSequence)) {
+        boolean isNew;
+        if (allFingerprints != null) {
+            isNew = allFingerprints.add(newSequence.fingerprint());
+        }
+        else {
+            isNew = allSequences.add(newSequence);
+        }
+        if (!isNew) {
             if (Log.isLoggingOn())
                 Log.logLine("Sequence discarded because the same sequence was previously created.");
-            return null;
+            return false;
         }
 
-        this.allSequences.add(newSequence);
-
-        for (Sequence s : sequences.sequences) {
-            s.lastTimeUsed = java.lang.System.currentTimeMillis();
+        for (Sequence s : candidate.inputs) {
+            componentManager.markUsed(s);
         }
 
         randoopConsistencyTest2(newSequence);
@@ -332,13 +686,14 @@ public class ForwardGenerator extends AbstractGenerator {
         // System.out.println("###" + statement.toStringVerbose() + "###" +
         // statement.getClass());
 
-        // Keep track of any input sequences that are used in this sequence
-        // Tests that contain only these sequences are probably redundant
-        for (Sequence is : sequences.sequences) {
-            subsumed_sequences.add(is);
+        // Keep track of any input sequences that are used in this
+        // sequence Tests that contain only these sequences are probably
+        // redundant
+        for (Sequence is : candidate.inputs) {
+            subsumedFingerprints.add(is.fingerprint());
         }
 
-        return new ExecutableSequence(newSequence);
+        return true;
     }
 
     // Adds the string corresponding to the given newSequences to the
@@ -355,8 +710,8 @@ public class ForwardGenerator extends AbstractGenerator {
     // Checks that the set allSequencesAsCode contains a set of strings
     // equivalent to the sequences in allSequences.
     protected void randoopConsistencyTests(Sequence newSequence) {
-        // Testing code.
-        if (GenInputsAbstract.debug_checks) {
+        // Testing code. Only possible when all sequences are kept.
+        if (GenInputsAbstract.debug_checks && allFingerprints == null) {
             String code = newSequence.toCodeString();
             if (this.allSequences.contains(newSequence)) {
                 if (!this.allsequencesAsCode.contains(code)) {
@@ -477,8 +832,7 @@ public class ForwardGenerator extends AbstractGenerator {
             // If alias ratio is given, attempt with some probability to use a
             // variable already in S.
             if (GenInputsAbstract.alias_ratio != 0
-                    && Randomness
-                            .weighedCoinFlip(GenInputsAbstract.alias_ratio)) {
+                    && random.weighedCoinFlip(GenInputsAbstract.alias_ratio)) {
 
                 // candidateVars will store the indices that can serve as input
                 // to the i-th input in st.
@@ -501,7 +855,7 @@ public class ForwardGenerator extends AbstractGenerator {
                 SimpleList<Integer> candidateVars2 = new ListOfLists<Integer>(
                         candidateVars);
                 if (candidateVars2.size() > 0) {
-                    int randVarIdx = Randomness.nextRandomInt(candidateVars2
+                    int randVarIdx = random.nextRandomInt(candidateVars2
                             .size());
                     Integer randVar = candidateVars2.get(randVarIdx);
                     variables.add(randVar);
@@ -551,7 +905,7 @@ public class ForwardGenerator extends AbstractGenerator {
                     Log.logLine("Array creation heuristic: will create helper array of type "
                             + t);
                 SimpleList<Sequence> l2 = HelperSequenceCreator.createSequence(
-                        componentManager, t);
+                        componentManager, t, random);
                 l = new ListOfLists<Sequence>(l1, l2);
 
             }
@@ -603,7 +957,7 @@ public class ForwardGenerator extends AbstractGenerator {
             // inputs with some given frequency.
             // If this is the case, then use null instead with some probability.
             if (!isReceiver && GenInputsAbstract.null_ratio != 0
-                    && Randomness.weighedCoinFlip(GenInputsAbstract.null_ratio)) {
+                    && random.weighedCoinFlip(GenInputsAbstract.null_ratio)) {
                 if (Log.isLoggingOn())
                     Log.logLine("null-ratio option given. Randomly decided to use null as input.");
                 StatementKind st = PrimitiveOrStringOrNullDecl
@@ -622,10 +976,10 @@ public class ForwardGenerator extends AbstractGenerator {
             // randomly-chosen sequence from the list.
             Sequence chosenSeq = null;
             if (GenInputsAbstract.small_tests) {
-                chosenSeq = Randomness.randomMemberWeighted(l);
+                chosenSeq = random.randomMemberWeighted(l);
             }
             else {
-                chosenSeq = Randomness.randomMember(l);
+                chosenSeq = random.randomMember(l);
             }
 
             // Now, find values that satisfy the constraint set.
@@ -633,7 +987,8 @@ public class ForwardGenerator extends AbstractGenerator {
             // if (i == 0 && statement.isInstanceMethod()) m = Match.EXACT_TYPE;
             // Variable randomVariable =
             // chosenSeq.randomVariableForTypeLastStatement(t, m);
-            Variable randomVariable = chosenSeq.randomVariableForType(t, m);
+            Variable randomVariable = chosenSeq.randomVariableForType(t, m,
+                    random);
 
             // We are not done yet: we have chosen a sequence that yields a
             // value of the required
@@ -678,10 +1033,21 @@ public class ForwardGenerator extends AbstractGenerator {
     }
 
     /**
-     * Returns the set of sequences that are used as inputs in other sequences
-     * (and can thus be thought of as subsumed by another sequence).
+     * Whether the sequence was used as an input in another sequence (and can
+     * thus be thought of as subsumed by another sequence). If
+     * --fingerprint_limit is given, the answer is approximate in the same way
+     * as for duplicate sequences.
      */
-    public Set<Sequence> subsumed_sequences() {
-        return subsumed_sequences;
+    @Override
+    public boolean isSubsumed(Sequence s) {
+        synchronized (allSequences) {
+            if (subsumedFingerprints.contains(s.fingerprint()))
+                return true;
+        }
+        for (ForwardGenerator worker : isolatedWorkers) {
+            if (worker.isSubsumed(s))
+                return true;
+        }
+        return false;
     }
 }
@@ -17,10 +17,10 @@ public class HelperSequenceCreator {
      * class. Wraps the object in a list, and returns the list.
      * 
      * CURRENTLY, will return a sequence (i.e. a non-empty list) only if cls is
-     * an array.
+     * an array. Random choices are drawn from the given stream.
      */
     public static SimpleList<Sequence> createSequence(
-            ComponentManager components, Class<?> cls) {
+            ComponentManager components, Class<?> cls, Randomness random) {
 
         // Class<?> cls = statement.getInputTypes().get(i);
 
@@ -31,7 +31,7 @@ public class HelperSequenceCreator {
         Sequence s = null;
 
         if (cls.getComponentType().isPrimitive()) {
-            s = randPrimitiveArray(cls.getComponentType());
+            s = randPrimitiveArray(cls.getComponentType(), random);
         }
         else {
             SimpleList<Sequence> candidates = components.getSequencesForType(
@@ -68,14 +68,14 @@ public class HelperSequenceCreator {
                 // sequence.
                 ArrayDeclaration decl = new ArrayDeclaration(
                         cls.getComponentType(), 1);
-                s = candidates.get(Randomness.nextRandomInt(candidates.size()));
+                s = candidates.get(random.nextRandomInt(candidates.size()));
                 List<Variable> ins = new ArrayList<Variable>();
                 // XXX IS THIS OLD COMMENT TRUE? : this assumes that last
                 // statement will have such a var,
                 // which I know is currently true because of SequenceCollection
                 // implementation.
                 ins.add(s.randomVariableForTypeLastStatement(
-                        cls.getComponentType(), Match.COMPATIBLE_TYPE));
+                        cls.getComponentType(), Match.COMPATIBLE_TYPE, random));
                 s = s.extend(decl, ins);
             }
         }
@@ -85,14 +85,15 @@ public class HelperSequenceCreator {
         return l;
     }
 
-    private static Sequence randPrimitiveArray(Class<?> componentType) {
+    private static Sequence randPrimitiveArray(Class<?> componentType,
+            Randomness random) {
         assert componentType.isPrimitive();
         Set<Object> potentialElts = SeedSequences.getSeeds(componentType);
-        int length = Randomness.nextRandomInt(4);
+        int length = random.nextRandomInt(4);
         Sequence s = new Sequence();
         List<Variable> emptylist = new ArrayList<Variable>();
         for (int i = 0; i < length; i++) {
-            Object elt = Randomness.randomSetMember(potentialElts);
+            Object elt = random.randomSetMember(potentialElts);
             s = s.extend(new PrimitiveOrStringOrNullDecl(componentType, elt),
                     emptylist);
         }
@@ -37,10 +37,10 @@ public final class RConstructor implements StatementKind, Serializable {
     // Cached values (for improved performance). Their values
     // are computed upon the first invocation of the respective
     // getter method.
-    private List<Class<?>> inputTypesCached;
+    private volatile List<Class<?>> inputTypesCached;
     private Class<?> outputTypeCached;
     private int hashCodeCached = 0;
-    private boolean hashCodeComputed = false;
+    private volatile boolean hashCodeComputed = false;
 
     private Object writeReplace() throws ObjectStreamException {
         return new SerializableRConstructor(constructor);
@@ -156,8 +156,8 @@ public final class RConstructor implements StatementKind, Serializable {
     @Override
     public int hashCode() {
         if (!hashCodeComputed) {
-            hashCodeComputed = true;
             hashCodeCached = this.constructor.hashCode();
+            hashCodeComputed = true;
         }
         return hashCodeCached;
     }
@@ -169,6 +169,19 @@ public final class RConstructor implements StatementKind, Serializable {
 
         assert statementInput.length == this.getInputTypes().size();
 
+        if (ReflectionExecutor.canExecuteDirectly()) {
+            // Call the constructor without a ConstructorReflectionCode
+            // wrapper; see RMethod.execute.
+            try {
+                return new NormalExecution(
+                        ReflectionExecutor.newInstanceDirectly(
+                                this.constructor, statementInput, out), 0);
+            }
+            catch (ReflectionExecutor.DirectCallException e) {
+                return new ExceptionalExecution(e.getCause(), 0);
+            }
+        }
+
         ConstructorReflectionCode code = new ConstructorReflectionCode(
                 this.constructor, statementInput);
 
@@ -39,14 +39,15 @@ public final class RMethod implements StatementKind, Serializable {
 
     // Cached values (for improved performance). Their values
     // are computed upon the first invocation of the respective
-    // getter method.
-    private List<Class<?>> inputTypesCached;
+    // getter method. Generation workers may race to compute them,
+    // so each value is published through a volatile field.
+    private volatile List<Class<?>> inputTypesCached;
     private Class<?> outputTypeCached;
-    private boolean hashCodeComputed = false;
+    private volatile boolean hashCodeComputed = false;
     private int hashCodeCached = 0;
-    private boolean isVoidComputed = false;
+    private volatile boolean isVoidComputed = false;
     private boolean isVoidCached = false;
-    private boolean isStaticComputed = false;
+    private volatile boolean isStaticComputed = false;
     private boolean isStaticCached = false;
 
     /** Version that doesn't include a Method **/
@@ -227,8 +228,8 @@ public final class RMethod implements StatementKind, Serializable {
     @Override
     public int hashCode() {
         if (!hashCodeComputed) {
-            hashCodeComputed = true;
             hashCodeCached = this.method.hashCode();
+            hashCodeComputed = true;
         }
         return hashCodeCached;
     }
@@ -249,9 +250,33 @@ public final class RMethod implements StatementKind, Serializable {
             paramsStartIndex = 1;
         }
 
-        Object[] params = new Object[paramsLength];
-        for (int i = 0; i < params.length; i++) {
-            params[i] = statementInput[i + paramsStartIndex];
+        Object[] params;
+        if (paramsStartIndex == 0) {
+            params = statementInput;
+        }
+        else {
+            params = new Object[paramsLength];
+            for (int i = 0; i < params.length; i++) {
+                params[i] = statementInput[i + paramsStartIndex];
+            }
+        }
+
+        if (ReflectionExecutor.canExecuteDirectly()) {
+            // Call the method without a MethodReflectionCode wrapper. The
+            // method was made accessible when this RMethod was created.
+            calls_num++;
+            long startTime = System.nanoTime();
+            try {
+                Object retval = ReflectionExecutor.invokeDirectly(
+                        this.method, receiver, params, out);
+                return new NormalExecution(retval, 0);
+            }
+            catch (ReflectionExecutor.DirectCallException e) {
+                return new ExceptionalExecution(e.getCause(), 0);
+            }
+            finally {
+                calls_time += System.nanoTime() - startTime;
+            }
         }
 
         MethodReflectionCode code = new MethodReflectionCode(this.method,
@@ -276,13 +301,14 @@ public final class RMethod implements StatementKind, Serializable {
     public List<Class<?>> getInputTypes() {
         if (inputTypesCached == null) {
             Class<?>[] methodParameterTypes = method.getParameterTypes();
-            inputTypesCached = new ArrayList<Class<?>>(
+            List<Class<?>> inputTypes = new ArrayList<Class<?>>(
                     methodParameterTypes.length + (isStatic() ? 0 : 1));
             if (!isStatic())
-                inputTypesCached.add(method.getDeclaringClass());
+                inputTypes.add(method.getDeclaringClass());
             for (int i = 0; i < methodParameterTypes.length; i++) {
-                inputTypesCached.add(methodParameterTypes[i]);
+                inputTypes.add(methodParameterTypes[i]);
             }
+            inputTypesCached = inputTypes;
         }
         return inputTypesCached;
     }
@@ -299,8 +325,8 @@ public final class RMethod implements StatementKind, Serializable {
 
     public boolean isVoid() {
         if (!isVoidComputed) {
-            isVoidComputed = true;
             isVoidCached = void.class.equals(this.method.getReturnType());
+            isVoidComputed = true;
         }
         return isVoidCached;
     }
@@ -311,8 +337,8 @@ public final class RMethod implements StatementKind, Serializable {
      */
     public boolean isStatic() {
         if (!isStaticComputed) {
-            isStaticComputed = true;
             isStaticCached = Modifier.isStatic(this.method.getModifiers());
+            isStaticComputed = true;
         }
         return this.isStaticCached;
     }
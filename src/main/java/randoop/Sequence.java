@@ -1,7 +1,5 @@
 package randoop;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -41,20 +39,30 @@ public final class Sequence implements Serializable, WeightedElement {
 
     private static final long serialVersionUID = -4345602588310287644L;
 
-    public double lastTimeUsed = java.lang.System.currentTimeMillis();
+    // When the sequence was last added to the components or used as an
+    // input, on the logical clock of the ComponentManager.
+    public double lastTimeUsed = 0;
 
     // The list of statements.
     public final SimpleList<Statement> statements;
 
     // The values involved in the last statement (receiver, return
-    // value, parameters). Should be final but cannot because of serialization.
-    // This info is used by some generators.
-    private transient/* final */List<Variable> lastStatementVariables;
-
-    // The types of the values in lastStatementTypes.
-    // Should be final but cannot because of serialization.
-    // This info is used by some generators.
-    private transient/* final */List<Class<?>> lastStatementTypes;
+    // value, parameters), and their types. This info is used by some
+    // generators, but most sequences never need it (many are discarded right
+    // after being created), so it is computed on first use. Null until then.
+    private transient LastStatementInfo lastStatementInfo;
+
+    // Final fields, so a LastStatementInfo computed by one thread can be
+    // safely read by another without locking.
+    private static final class LastStatementInfo {
+        final List<Variable> variables;
+        final List<Class<?>> types;
+
+        LastStatementInfo(List<Variable> variables, List<Class<?>> types) {
+            this.variables = variables;
+            this.types = types;
+        }
+    }
 
     /*
      * Weight is used by heuristic that favors smaller sequences so it makes
@@ -99,7 +107,7 @@ public final class Sequence implements Serializable, WeightedElement {
      * variable.
      */
     public List<Variable> getLastStatementVariables() {
-        return this.lastStatementVariables;
+        return getLastStatementInfo().variables;
     }
 
     /**
@@ -108,7 +116,7 @@ public final class Sequence implements Serializable, WeightedElement {
      * signature of the StatementKind, but the types of the variables.
      */
     public List<Class<?>> getLastStatementTypes() {
-        return this.lastStatementTypes;
+        return getLastStatementInfo().types;
     }
 
     /** The value created by the last statement in the sequence. */
@@ -158,41 +166,45 @@ public final class Sequence implements Serializable, WeightedElement {
     // Active flags are used during generation, to determine what values
     // in an existing sequence are useful to be used as inputs when
     // creating a new sequence out of the existing one.
-    public BitSet activeFlags;
+    //
+    // A new sequence has all its flags set, and most sequences keep them that
+    // way or are discarded, so null stands for "all flags set", and the
+    // BitSet is only allocated when a flag is first cleared.
+    private BitSet activeFlags;
 
     public boolean hasActiveFlags() {
+        if (activeFlags == null)
+            return this.size() > 0;
         return !activeFlags.isEmpty();
     }
 
     public boolean isActive(int i) {
+        if (activeFlags == null)
+            return i < this.size();
         return activeFlags.get(i);
     }
 
     public void setAllActiveFlags() {
-        activeFlags.set(0, this.size());
+        activeFlags = null;
     }
 
     public void clearAllActiveFlags() {
-        activeFlags.clear(0, this.size());
+        activeFlags = new BitSet(this.size());
     }
 
     public void setActiveFlag(int i) {
-        activeFlags.set(i);
+        if (activeFlags != null)
+            activeFlags.set(i);
     }
 
     public void clearActiveFlag(int i) {
+        if (activeFlags == null) {
+            activeFlags = new BitSet(this.size());
+            activeFlags.set(0, this.size());
+        }
         activeFlags.clear(i);
     }
 
-    // Serialization.
-    // Recovers transient fields (recomputes them).
-    private void readObject(ObjectInputStream s) throws IOException,
-            ClassNotFoundException {
-        s.defaultReadObject();
-        // customized deserialization code
-        computeLastStatementInfo();
-    }
-
     // Used internally (i.e. in package randoop.sequence) to represent inputs
     // to a statement.
     //
@@ -355,7 +367,7 @@ public final class Sequence implements Serializable, WeightedElement {
 
     /** Create a new, empty sequence. */
     public Sequence() {
-        this(new ArrayListSimpleList<Statement>(), 0, 0);
+        this(new ArrayListSimpleList<Statement>(), 0, 1, 0);
     }
 
     /**
@@ -383,22 +395,44 @@ public final class Sequence implements Serializable, WeightedElement {
 
     // Create a sequence with the given statements.
     /* package */public Sequence(SimpleList<Statement> statements) {
-        this(statements, computeHashcode(statements),
-                computeNetSize(statements));
+        this(statements, computeFingerprint(statements),
+                power(statements.size()), computeNetSize(statements));
     }
 
-    // The hashcode of a sequence is the sum of each statement's hashcode.
-    // This seems good enough, and it makes computing hashCode of a
-    // concatenation of sequences faster (it's just the addition of each
-    // sequence's'
-    // hashCode). Otherwise, hashCode computation used to be a hotspot.
-    private static int computeHashcode(SimpleList<Statement> statements) {
-        int hashCode = 0;
+    // The fingerprint of a sequence s_0 ... s_n-1 is the polynomial
+    //
+    // f(s_0) * P^(n-1) + f(s_1) * P^(n-2) + ... + f(s_n-1)
+    //
+    // (mod 2^64), where f is Statement.fingerprint(). Unlike the sum of the
+    // statements' hash codes, which was used before, it tells apart sequences
+    // that contain the same statements in a different order, which used to
+    // collide and make set lookups fall back to long equals() walks. It is
+    // still cheap to combine: extending a sequence by s gives f * P + f(s),
+    // and concatenating A and B gives f(A) * P^|B| + f(B), so each sequence
+    // also saves P^size. Otherwise, hashCode computation used to be a
+    // hotspot.
+    private static final long FINGERPRINT_BASE = 0x9E3779B97F4A7C15L;
+
+    private static long computeFingerprint(SimpleList<Statement> statements) {
+        long fingerprint = 0;
         for (int i = 0; i < statements.size(); i++) {
-            Statement s = statements.get(i);
-            hashCode += s.hashCode();
+            fingerprint = fingerprint * FINGERPRINT_BASE
+                    + statements.get(i).fingerprint();
+        }
+        return fingerprint;
+    }
+
+    // FINGERPRINT_BASE^n.
+    private static long power(int n) {
+        long result = 1;
+        long base = FINGERPRINT_BASE;
+        while (n > 0) {
+            if ((n & 1) != 0)
+                result *= base;
+            base *= base;
+            n >>= 1;
         }
-        return hashCode;
+        return result;
     }
 
     // The number of statements that are not primitive declarations, i.e.
@@ -414,28 +448,59 @@ public final class Sequence implements Serializable, WeightedElement {
         return netSize;
     }
 
-    // Create a sequence that has the given statements and hashCode (hashCode is
-    // for optimization).
+    // Create a sequence that has the given statements, fingerprint and
+    // FINGERPRINT_BASE^size (these two are for optimization).
     //
-    // See comment at computeHashCode method for notes on hashCode.
-    private Sequence(SimpleList<Statement> statements, int hashCode, int netSize) {
+    // See comment at computeFingerprint method for notes on the fingerprint.
+    private Sequence(SimpleList<Statement> statements, long fingerprint,
+            long power, int netSize) {
         if (statements == null)
             throw new IllegalArgumentException(
                     "`statements' argument cannot be null");
-        this.statements = statements;
-        this.savedHashCode = hashCode;
+        this.statements = compact(statements);
+        this.savedFingerprint = fingerprint;
+        this.savedPower = power;
+        this.savedHashCode = (int) (fingerprint ^ (fingerprint >>> 32));
         this.savedNetSize = netSize;
-        computeLastStatementInfo();
-        this.activeFlags = new BitSet(this.size());
-        setAllActiveFlags();
+        this.activeFlags = null; // All flags set.
         checkRep();
     }
 
-    // Set lastStatementVariables and lastStatementTypes to their appropriate
-    // values. See documentation for these fields for more info.
-    private void computeLastStatementInfo() {
-        this.lastStatementTypes = new ArrayList<Class<?>>();
-        this.lastStatementVariables = new ArrayList<Variable>();
+    // Statement lists nested deeper than this are copied into a flat list.
+    // See SimpleList for the trade-off.
+    private static final int MAX_STATEMENTS_DEPTH = 8;
+
+    // Returns the given statements, or a flat copy of them if they are nested
+    // too deeply. Sequences built from a flat list start nesting from depth 1
+    // again, so each statement is copied about once every
+    // MAX_STATEMENTS_DEPTH extensions, and statements.get(i) costs at most
+    // MAX_STATEMENTS_DEPTH steps.
+    private static SimpleList<Statement> compact(
+            SimpleList<Statement> statements) {
+        if (statements.depth() <= MAX_STATEMENTS_DEPTH)
+            return statements;
+        ArrayListSimpleList<Statement> flat = new ArrayListSimpleList<Statement>(
+                statements.size());
+        statements.appendTo(flat.theList);
+        return flat;
+    }
+
+    // Returns lastStatementInfo, computing it if this is the first use. Two
+    // threads may both compute it; they get equal results.
+    private LastStatementInfo getLastStatementInfo() {
+        LastStatementInfo info = this.lastStatementInfo;
+        if (info == null) {
+            info = computeLastStatementInfo();
+            this.lastStatementInfo = info;
+        }
+        return info;
+    }
+
+    // Computes the variables involved in the last statement and their types.
+    // See documentation for lastStatementInfo for more info.
+    private LastStatementInfo computeLastStatementInfo() {
+        List<Class<?>> lastStatementTypes = new ArrayList<Class<?>>();
+        List<Variable> lastStatementVariables = new ArrayList<Variable>();
 
         if (this.statements.size() > 0) {
             Statement si = this.statements.get(this.statements.size() - 1);
@@ -472,6 +537,8 @@ public final class Sequence implements Serializable, WeightedElement {
                 lastStatementVariables.add(idx);
             }
         }
+        return new LastStatementInfo(lastStatementVariables,
+                lastStatementTypes);
     }
 
     /**
@@ -545,6 +612,11 @@ public final class Sequence implements Serializable, WeightedElement {
         if (o == this)
             return true;
         Sequence other = (Sequence) o;
+        // Equal sequences have equal fingerprints; this rules out most
+        // unequal sequences without walking their statements.
+        if (this.savedFingerprint != other.savedFingerprint)
+            return GenInputsAbstract.debug_checks ? verifyFalse("fingerprint",
+                    other) : false;
         if (this.getStatementsWithInputs().size() != other
                 .getStatementsWithInputs().size())
             return GenInputsAbstract.debug_checks ? verifyFalse("size", other)
@@ -585,6 +657,11 @@ public final class Sequence implements Serializable, WeightedElement {
     // A saved copy of this sequence's hashcode to avoid recomputation.
     protected final int savedHashCode;
 
+    // This sequence's fingerprint and FINGERPRINT_BASE^size. See comment at
+    // computeFingerprint method.
+    private final long savedFingerprint;
+    private final long savedPower;
+
     // A saved copy of this sequence's net size to avoid recomputation.
     private final int savedNetSize;
 
@@ -592,12 +669,23 @@ public final class Sequence implements Serializable, WeightedElement {
         return savedNetSize;
     }
 
-    // See comment at computeHashCode method for notes on hashCode.
+    // The hashCode is derived from the fingerprint; see comment at
+    // computeFingerprint method.
     @Override
     public final int hashCode() {
         return savedHashCode;
     }
 
+    /**
+     * A 64-bit, order-sensitive hash of this sequence's statements. Equal
+     * sequences have equal fingerprints, and unequal sequences are very
+     * unlikely to, so the fingerprint can stand in for the sequence when
+     * detecting duplicates. Computed incrementally; takes constant time.
+     */
+    public long fingerprint() {
+        return savedFingerprint;
+    }
+
     /**
      * True iff this sequence contains a statement at the given index.
      */
@@ -627,15 +715,17 @@ public final class Sequence implements Serializable, WeightedElement {
         return this.getStatementsWithInputs().get(index);
     }
 
-    public Variable randomVariableForTypeLastStatement(Class<?> t, Match match) {
-        return randomVariableOfTypeLastStatement(t, match);
+    public Variable randomVariableForTypeLastStatement(Class<?> t,
+            Match match, Randomness random) {
+        return randomVariableOfTypeLastStatement(t, match, random);
     }
 
-    public Variable randomVariableForType(Class<?> t, Match match) {
+    public Variable randomVariableForType(Class<?> t, Match match,
+            Randomness random) {
         List<Variable> possibleVariables = getVariablesOfType(t, match);
         if (possibleVariables.size() == 0)
             return null;
-        return Randomness.randomMember(possibleVariables);
+        return random.randomMember(possibleVariables);
     }
 
     /**
@@ -643,12 +733,12 @@ public final class Sequence implements Serializable, WeightedElement {
      * Returns null if there are no matches.
      */
     public final Variable randomVariableOfTypeLastStatement(Class<?> clazz,
-            Reflection.Match match) {
+            Reflection.Match match, Randomness random) {
         List<Variable> possibleVariables = valuesAppearingInLastStatement(
                 clazz, match);
         if (possibleVariables.isEmpty())
             return null;
-        return Randomness.randomMember(possibleVariables);
+        return random.randomMember(possibleVariables);
     }
 
     /**
@@ -659,11 +749,12 @@ public final class Sequence implements Serializable, WeightedElement {
             Reflection.Match match) {
         if (clazz == null || match == null)
             throw new IllegalArgumentException("parameters cannot be null.");
+        List<Variable> lastStatementVariables = getLastStatementVariables();
         List<Variable> possibleIndices = new ArrayList<Variable>(
-                this.lastStatementVariables.size());
-        for (int ithOutputIndex = 0; ithOutputIndex < this.lastStatementVariables
+                lastStatementVariables.size());
+        for (int ithOutputIndex = 0; ithOutputIndex < lastStatementVariables
                 .size(); ithOutputIndex++) {
-            Variable i = this.lastStatementVariables.get(ithOutputIndex);
+            Variable i = lastStatementVariables.get(ithOutputIndex);
             Statement s = statements.get(i.index);
             if (!s.isVoidMethodCall()
                     && varTypeMatches(s.statement.getOutputType(), clazz, match)) {
@@ -681,8 +772,7 @@ public final class Sequence implements Serializable, WeightedElement {
             Reflection.Match match) {
         if (clazz == null || match == null)
             throw new IllegalArgumentException("parameters cannot be null.");
-        List<Variable> possibleIndices = new ArrayList<Variable>(
-                this.lastStatementVariables.size());
+        List<Variable> possibleIndices = new ArrayList<Variable>();
         for (int i = 0; i < this.size(); i++) {
             Statement s = statements.get(i);
             if (!s.isVoidMethodCall()
@@ -725,8 +815,9 @@ public final class Sequence implements Serializable, WeightedElement {
         int newNetSize = (statement instanceof PrimitiveOrStringOrNullDecl) ? this.savedNetSize
                 : this.savedNetSize + 1;
         return new Sequence(new OneMoreElementList<Statement>(this.statements,
-                newStatement), this.savedHashCode + newStatement.hashCode(),
-                newNetSize);
+                newStatement), this.savedFingerprint * FINGERPRINT_BASE
+                + newStatement.fingerprint(), this.savedPower
+                * FINGERPRINT_BASE, newNetSize);
     }
 
     /**
@@ -783,19 +874,22 @@ public final class Sequence implements Serializable, WeightedElement {
 
     public static Sequence concatenate(List<Sequence> sequences) {
         List<SimpleList<Statement>> statements1 = new ArrayList<SimpleList<Statement>>();
-        int newHashCode = 0;
+        long newFingerprint = 0;
+        long newPower = 1;
         int newNetSize = 0;
         for (Sequence c : sequences) {
-            newHashCode += c.savedHashCode;
+            newFingerprint = newFingerprint * c.savedPower + c.savedFingerprint;
+            newPower *= c.savedPower;
             newNetSize += c.savedNetSize;
             statements1.add(c.statements);
         }
         return new Sequence(new ListOfLists<Statement>(statements1),
-                newHashCode, newNetSize);
+                newFingerprint, newPower, newNetSize);
     }
 
     // TODO inline and remove; used only in one place and confusing.
     public Variable getFirstVariableFromLastStatementVariables() {
+        List<Variable> lastStatementVariables = getLastStatementVariables();
         if (lastStatementVariables.size() == 0)
             throw new IllegalStateException();
         return lastStatementVariables.get(0);
@@ -813,6 +907,25 @@ public final class Sequence implements Serializable, WeightedElement {
         return inputsAsVariables;
     }
 
+    /** The number of inputs of the ith statement. */
+    public int getInputCount(int i) {
+        return this.statements.get(i).inputs.size();
+    }
+
+    /**
+     * Like getInputsAsAbsoluteIndices(i), but writes the indices into the
+     * given buffer instead of allocating a list, and returns their number. The
+     * buffer must have room for getInputCount(i) indices.
+     */
+    public int getInputsAsAbsoluteIndices(int i, int[] buffer) {
+        List<RelativeNegativeIndex> inputs = this.statements.get(i).inputs;
+        int n = inputs.size();
+        for (int j = 0; j < n; j++) {
+            buffer[j] = i + inputs.get(j).index;
+        }
+        return n;
+    }
+
     public void printStatement(StringBuilder b, int index) {
         printStatement(b, index, true);
     }
@@ -824,14 +937,14 @@ public final class Sequence implements Serializable, WeightedElement {
                 getInputs(index), b, varUsed);
     }
 
-    public Sequence repeatLast(int times) {
+    public Sequence repeatLast(int times, Randomness random) {
         Sequence retval = new Sequence(this.statements);
         StatementKind statementToRepeat = retval.getLastStatement();
         for (int i = 0; i < times; i++) {
             List<Integer> vil = new ArrayList<Integer>();
             for (Variable v : retval.getInputs(retval.size() - 1)) {
                 if (v.getType().equals(int.class)) {
-                    int randint = Randomness.nextRandomInt(100);
+                    int randint = random.nextRandomInt(100);
                     retval = retval.extend(new PrimitiveOrStringOrNullDecl(
                             int.class, randint));
                     vil.add(retval.size() - 1);
@@ -1,17 +1,20 @@
 package randoop;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import randoop.main.GenInputsAbstract;
-import randoop.util.ArrayListSimpleList;
-import randoop.util.ListOfLists;
+import randoop.util.ConcurrentListOfLists;
+import randoop.util.ConcurrentSimpleList;
 import randoop.util.Log;
 import randoop.util.Reflection.Match;
 import randoop.util.SimpleList;
@@ -47,35 +50,98 @@ import randoop.util.SimpleList;
  * uses the <code>SubTypeSet</code> to find the set <code>S</code> of feasible
  * subtypes in set of sequences, and returns the range of
  * <code>S</cod> in the sequence map.
+ *
+ * <p>
+ * CONCURRENCY. A collection can be shared by several generation workers.
+ * Lookups do not lock: the sequences of each type are kept in a
+ * {@link ConcurrentSimpleList}, and <code>getSequencesForType</code> returns
+ * a live view that reads the current snapshots of those lists. Adding a
+ * sequence locks only the lists of its types, plus, when a type gets its first
+ * sequence, the set of types.
  */
 public class SequenceCollection {
 
-    // We make it a list to make it easier to pick out an element at random.
-    private Map<Class<?>, ArrayListSimpleList<Sequence>> activeSequences = new LinkedHashMap<Class<?>, ArrayListSimpleList<Sequence>>();
+    // The contents of the collection. clear() replaces them as a whole, so a
+    // thread that adds or looks up sequences during a clear works on either
+    // the old or the new contents, never a mix.
+    private static final class Contents {
+
+        // We make it a list to make it easier to pick out an element at
+        // random. Each type's list is locked separately (see
+        // ConcurrentSimpleList), so threads adding sequences of different
+        // types don't wait for each other.
+        final ConcurrentMap<Class<?>, ConcurrentSimpleList<Sequence>> activeSequences = new ConcurrentHashMap<Class<?>, ConcurrentSimpleList<Sequence>>();
+
+        // The keys of activeSequences, in the order in which they were added,
+        // for iterating over the types in a deterministic order.
+        final List<Class<?>> types = new CopyOnWriteArrayList<Class<?>>();
+
+        // Guarded by the lock of this object, which is also held while a type
+        // gets its first sequence.
+        final SubTypeSet typesWithSequencesMap = new SubTypeSet(false);
+
+        final AtomicInteger numActivesequences = new AtomicInteger();
+
+        // Views returned by getSequencesForType, by queried type, so that
+        // repeated queries don't recompute the compatible types and allocate
+        // new lists. A view follows its lists as they change, so it only has
+        // to be replaced when typesVersion changes.
+        final ConcurrentMap<Class<?>, CandidateView> exactViews = new ConcurrentHashMap<Class<?>, CandidateView>();
+        final ConcurrentMap<Class<?>, CandidateView> compatibleViews = new ConcurrentHashMap<Class<?>, CandidateView>();
+
+        // Incremented whenever a type gets its first sequence, which may add
+        // a list to a view.
+        volatile int typesVersion = 0;
+    }
+
+    private volatile Contents contents = new Contents();
+
+    // Limits on the number of sequences, in total and per type; 0 means no
+    // limit. See setLimits.
+    private int maxSequences = 0;
+    private int maxSequencesPerType = 0;
+
+    // Sequences that are never evicted.
+    private Set<Sequence> pinnedSequences = Collections.emptySet();
 
-    private SubTypeSet typesWithSequencesMap = new SubTypeSet(false);
+    // The number of sequences evicted so far.
+    private final AtomicInteger numEvicted = new AtomicInteger();
 
-    public int numActivesequences = 0;
+    // A view over the lists of the types that match a query, as of the given
+    // typesVersion.
+    private static final class CandidateView {
+        final ConcurrentListOfLists<Sequence> view;
+        final int typesVersion;
+
+        CandidateView(List<ConcurrentSimpleList<Sequence>> lists,
+                int typesVersion) {
+            this.view = new ConcurrentListOfLists<Sequence>(lists);
+            this.typesVersion = typesVersion;
+        }
+    }
 
     private void checkRep() {
         if (!GenInputsAbstract.debug_checks)
             return;
-        if (activeSequences.size() != typesWithSequencesMap.size()) {
-            StringBuilder b = new StringBuilder();
-            b.append("activesequences types=" + Globals.lineSep
-                    + activeSequences.keySet());
-            b.append(", typesWithsequencesMap types=" + Globals.lineSep);
-            b.append(typesWithSequencesMap.typesWithsequences);
-            throw new IllegalStateException(b.toString());
+        Contents c = contents;
+        synchronized (c) {
+            if (c.activeSequences.size() != c.typesWithSequencesMap.size()) {
+                StringBuilder b = new StringBuilder();
+                b.append("activesequences types=" + Globals.lineSep
+                        + c.activeSequences.keySet());
+                b.append(", typesWithsequencesMap types=" + Globals.lineSep);
+                b.append(c.typesWithSequencesMap);
+                throw new IllegalStateException(b.toString());
+            }
         }
     }
 
     public int numTypes() {
-        return typesWithSequencesMap.size();
+        return contents.types.size();
     }
 
     public int size() {
-        return numActivesequences;
+        return contents.numActivesequences.get();
     }
 
     /**
@@ -84,9 +150,7 @@ public class SequenceCollection {
     public void clear() {
         if (Log.isLoggingOn())
             Log.logLine("Clearing sequence collection.");
-        this.activeSequences = new LinkedHashMap<Class<?>, ArrayListSimpleList<Sequence>>();
-        this.typesWithSequencesMap = new SubTypeSet(false);
-        numActivesequences = 0;
+        this.contents = new Contents();
         checkRep();
     }
 
@@ -103,9 +167,6 @@ public class SequenceCollection {
     public SequenceCollection(Collection<Sequence> initialSequences) {
         if (initialSequences == null)
             throw new IllegalArgumentException("initialSequences is null.");
-        this.activeSequences = new LinkedHashMap<Class<?>, ArrayListSimpleList<Sequence>>();
-        this.typesWithSequencesMap = new SubTypeSet(false);
-        numActivesequences = 0;
         addAll(initialSequences);
         checkRep();
     }
@@ -120,10 +181,11 @@ public class SequenceCollection {
     }
 
     public void addAll(SequenceCollection components) {
-        for (ArrayListSimpleList<Sequence> s : components.activeSequences
-                .values()) {
-            for (Sequence seq : s.theList) {
-                add(seq);
+        Contents c = components.contents;
+        for (Class<?> t : c.types) {
+            SimpleList<Sequence> s = c.activeSequences.get(t).snapshot();
+            for (int i = 0; i < s.size(); i++) {
+                add(s.get(i));
             }
         }
     }
@@ -149,36 +211,183 @@ public class SequenceCollection {
          * (sequence.isActive(v.getDeclIndex()))
          * classes.add(constraints.get(i)); }
          */
-        for (Variable v : sequence.getAllVariables()) {
-            if (sequence.isActive(v.getDeclIndex()))
-                classes.add(v.getType());
+        for (int i = 0; i < sequence.size(); i++) {
+            if (sequence.isActive(i))
+                classes.add(sequence.getStatementKind(i).getOutputType());
         }
-        updateCompatibleClassMap(classes);
-        updateCompatibleMap(sequence, classes);
+        Contents c = contents;
+        for (Class<?> t : classes) {
+            if (Log.isLoggingOn())
+                Log.logLine("Adding sequence to active sequences of type " + t);
+            sequencesOfType(c, t).add(sequence);
+            c.numActivesequences.incrementAndGet();
+        }
+        evictIfNeeded(c, classes);
         checkRep();
     }
 
-    private void updateCompatibleClassMap(List<Class<?>> classes) {
-        for (Class<?> c : classes) {
-            typesWithSequencesMap.add(c);
+    // Returns the list of sequences of the given type, creating it (and
+    // adding the type to typesWithSequencesMap) if the type has none yet.
+    private static ConcurrentSimpleList<Sequence> sequencesOfType(Contents c,
+            Class<?> t) {
+        ConcurrentSimpleList<Sequence> l = c.activeSequences.get(t);
+        if (l != null)
+            return l;
+        synchronized (c) {
+            l = c.activeSequences.get(t);
+            if (l == null) {
+                l = newSequenceList();
+                c.typesWithSequencesMap.add(t);
+                c.activeSequences.put(t, l);
+                c.types.add(t);
+                c.typesVersion++;
+            }
+            return l;
+        }
+    }
+
+    /**
+     * Bounds the size of this collection. Once a type has more than
+     * maxPerType sequences, or the collection has more than maxTotal, the
+     * least recently used sequences (see Sequence.lastTimeUsed) are removed,
+     * taken from the types with the most sequences in the latter case. Each
+     * eviction removes a further 1/16 of the limit, so that its cost, linear in
+     * the size of a type's list, is spread over the additions until the next
+     * one. Pinned sequences, and the last sequence of each type, are never
+     * removed, so the collection may exceed the limits if they are too small.
+     * A limit of 0 means no limit.
+     * <p>
+     * Must be called before the collection is shared between threads.
+     */
+    public void setLimits(int maxTotal, int maxPerType,
+            Set<Sequence> pinned) {
+        if (maxTotal < 0 || maxPerType < 0)
+            throw new IllegalArgumentException("limits must be non-negative.");
+        if (pinned == null)
+            throw new IllegalArgumentException("pinned is null.");
+        this.maxSequences = maxTotal;
+        this.maxSequencesPerType = maxPerType;
+        this.pinnedSequences = pinned;
+    }
+
+    /** The number of sequences removed to stay within the limits. */
+    public int numEvicted() {
+        return numEvicted.get();
+    }
+
+    // How many sequences below a limit an eviction goes, as a fraction of the
+    // limit: evicting one sequence at a time would copy a type's list on
+    // every addition once the limit is reached.
+    private static final int EVICTION_BATCH_DIVISOR = 16;
+
+    private static int evictionBatch(int limit) {
+        return Math.max(1, limit / EVICTION_BATCH_DIVISOR);
+    }
+
+    // Applies the limits after a sequence providing the given types was added.
+    private void evictIfNeeded(Contents c, List<Class<?>> addedTypes) {
+        if (maxSequencesPerType > 0) {
+            int target = maxSequencesPerType
+                    - evictionBatch(maxSequencesPerType);
+            for (Class<?> t : addedTypes) {
+                ConcurrentSimpleList<Sequence> l = c.activeSequences.get(t);
+                if (l.size() > maxSequencesPerType)
+                    evictLeastRecentlyUsed(c, t, l, l.size() - target);
+            }
+        }
+        if (maxSequences > 0) {
+            int target = maxSequences - evictionBatch(maxSequences);
+            if (c.numActivesequences.get() <= maxSequences)
+                return;
+            while (c.numActivesequences.get() > target) {
+                // Take from the largest type, to keep the types balanced: down
+                // to the size of the next largest, or by a batch of its own.
+                Class<?> largestType = null;
+                ConcurrentSimpleList<Sequence> largest = null;
+                int nextSize = 0;
+                for (Class<?> t : c.types) {
+                    ConcurrentSimpleList<Sequence> l = c.activeSequences.get(t);
+                    if (largest == null || l.size() > largest.size()) {
+                        if (largest != null)
+                            nextSize = largest.size();
+                        largestType = t;
+                        largest = l;
+                    }
+                    else if (l.size() > nextSize) {
+                        nextSize = l.size();
+                    }
+                }
+                if (largest == null)
+                    return;
+                int count = Math.min(c.numActivesequences.get() - target,
+                        Math.max(largest.size() - nextSize + 1,
+                                evictionBatch(largest.size())));
+                if (evictLeastRecentlyUsed(c, largestType, largest, count) == 0)
+                    return;
+            }
         }
     }
 
-    private void updateCompatibleMap(Sequence newsequence,
-            List<Class<?>> classes) {
-        for (int i = 0; i < classes.size(); i++) {
-            Class<?> t = classes.get(i);
-            ArrayListSimpleList<Sequence> set = this.activeSequences.get(t);
-            if (set == null) {
-                set = new ArrayListSimpleList<Sequence>();
-                this.activeSequences.put(t, set);
+    // Removes up to count of the least recently used sequences that are not
+    // pinned from the given type's list, always leaving at least one sequence.
+    // Returns the number of sequences removed.
+    private int evictLeastRecentlyUsed(Contents c, Class<?> t,
+            ConcurrentSimpleList<Sequence> l, int count) {
+        int removed = 0;
+        synchronized (l) {
+            SimpleList<Sequence> s = l.snapshot();
+            int n = s.size();
+            count = Math.min(count, n - 1);
+            if (count <= 0)
+                return 0;
+            // Find the time of last use of the count-th oldest sequence.
+            boolean[] evictable = new boolean[n];
+            double[] times = new double[n];
+            int numEvictable = 0;
+            for (int i = 0; i < n; i++) {
+                Sequence seq = s.get(i);
+                if (pinnedSequences.contains(seq))
+                    continue;
+                evictable[i] = true;
+                times[numEvictable++] = seq.lastTimeUsed;
+            }
+            if (numEvictable == 0)
+                return 0;
+            count = Math.min(count, numEvictable);
+            Arrays.sort(times, 0, numEvictable);
+            double threshold = times[count - 1];
+            // Remove the sequences used before then, and as many as needed of
+            // those used just then.
+            boolean[] remove = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                if (evictable[i] && s.get(i).lastTimeUsed < threshold) {
+                    remove[i] = true;
+                    removed++;
+                }
+            }
+            for (int i = 0; i < n && removed < count; i++) {
+                if (evictable[i] && !remove[i]
+                        && s.get(i).lastTimeUsed == threshold) {
+                    remove[i] = true;
+                    removed++;
+                }
             }
+            if (removed == 0)
+                return 0;
             if (Log.isLoggingOn())
-                Log.logLine("Adding sequence to active sequences of type " + t);
-            boolean added = set.add(newsequence);
-            numActivesequences++;
-            assert added == true;
+                Log.logLine("Evicting " + removed
+                        + " least recently used sequences of type " + t);
+            l.removeMarked(remove);
         }
+        c.numActivesequences.addAndGet(-removed);
+        numEvicted.addAndGet(removed);
+        return removed;
+    }
+
+    // With --small_tests, sequences are selected by weight, so keep the
+    // weights indexed (see ConcurrentSimpleList).
+    private static ConcurrentSimpleList<Sequence> newSequenceList() {
+        return new ConcurrentSimpleList<Sequence>(GenInputsAbstract.small_tests);
     }
 
     /**
@@ -202,27 +411,38 @@ public class SequenceCollection {
             // Log.logLine(activesequences.toString());
         }
 
-        List<SimpleList<Sequence>> ret = new ArrayList<SimpleList<Sequence>>();
+        Contents c = contents;
+        ConcurrentMap<Class<?>, CandidateView> views = exactMatch ? c.exactViews
+                : c.compatibleViews;
+        CandidateView cached = views.get(clazz);
+        int typesVersion = c.typesVersion;
+        if (cached == null || cached.typesVersion != typesVersion) {
+            List<ConcurrentSimpleList<Sequence>> ret = new ArrayList<ConcurrentSimpleList<Sequence>>();
 
-        if (exactMatch) {
-            SimpleList<Sequence> l = this.activeSequences.get(clazz);
-            if (l != null) {
-                ret.add(l);
+            if (exactMatch) {
+                ConcurrentSimpleList<Sequence> l = c.activeSequences.get(clazz);
+                if (l != null) {
+                    ret.add(l);
+                }
             }
-        }
-        else {
-            for (Class<?> compatibleClass : typesWithSequencesMap
-                    .getMatches(clazz)) {
-                ret.add(this.activeSequences.get(compatibleClass));
+            else {
+                synchronized (c) {
+                    for (Class<?> compatibleClass : c.typesWithSequencesMap
+                            .getMatches(clazz)) {
+                        ret.add(c.activeSequences.get(compatibleClass));
+                    }
+                }
             }
-        }
 
-        if (ret.isEmpty()) {
-            if (Log.isLoggingOn())
-                Log.logLine("getActivesequencesThatYield: found no sequences matching class "
-                        + clazz);
+            if (ret.isEmpty()) {
+                if (Log.isLoggingOn())
+                    Log.logLine("getActivesequencesThatYield: found no sequences matching class "
+                            + clazz);
+            }
+            cached = new CandidateView(ret, typesVersion);
+            views.put(clazz, cached);
         }
-        SimpleList<Sequence> selector = new ListOfLists<Sequence>(ret);
+        SimpleList<Sequence> selector = cached.view;
         if (Log.isLoggingOn())
             Log.logLine("getActivesequencesThatYield: returning "
                     + selector.size() + " sequences.");
@@ -230,18 +450,23 @@ public class SequenceCollection {
     }
 
     public Set<Class<?>> getTypesThatHaveSequences() {
-        return Collections.unmodifiableSet(this.typesWithSequencesMap
-                .getElements());
+        return Collections.unmodifiableSet(new LinkedHashSet<Class<?>>(
+                contents.types));
     }
 
     public boolean hasSequences(Class<?> targetClass, Match match) {
-        return typesWithSequencesMap.containsAssignableType(targetClass, match);
+        Contents c = contents;
+        synchronized (c) {
+            return c.typesWithSequencesMap.containsAssignableType(
+                    targetClass, match);
+        }
     }
 
     public Set<Sequence> getAllSequences() {
+        Contents c = contents;
         Set<Sequence> result = new LinkedHashSet<Sequence>();
-        for (ArrayListSimpleList<Sequence> a : activeSequences.values()) {
-            result.addAll(a.theList);
+        for (Class<?> t : c.types) {
+            result.addAll(c.activeSequences.get(t).snapshot().toJDKList());
         }
         return result;
 
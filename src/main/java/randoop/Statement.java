@@ -73,4 +73,20 @@ public final class Statement implements Serializable {
         return retval;
     }
 
+    /**
+     * A 64-bit hash of this statement, consistent with equals. Unlike
+     * hashCode, it depends on the order of the inputs and mixes its bits
+     * well, so Sequence can combine statement fingerprints into a sequence
+     * hash.
+     */
+    public long fingerprint() {
+        long h = statement.hashCode();
+        for (int i = 0; i < inputs.size(); i++) {
+            h = h * 31 + inputs.get(i).index;
+        }
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
 }
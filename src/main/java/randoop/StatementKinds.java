@@ -4,6 +4,8 @@ import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import arbitcheck.RMonitoring;
+
 public class StatementKinds {
 
     /**
@@ -49,7 +51,7 @@ public class StatementKinds {
         // If you add a statement kind, add its ID to this set.
         validIds.addAll(Arrays.asList(PrimitiveOrStringOrNullDecl.ID,
                 RMethod.ID, RConstructor.ID, ArrayDeclaration.ID,
-                DummyStatement.ID));
+                DummyStatement.ID, RMonitoring.ID));
 
         // Call appropriate parsing method.
         if (id.equals(PrimitiveOrStringOrNullDecl.ID)) {
@@ -67,6 +69,9 @@ public class StatementKinds {
         else if (id.equals(DummyStatement.ID)) {
             return DummyStatement.parse(descr);
         }
+        else if (id.equals(RMonitoring.ID)) {
+            return RMonitoring.parse(descr);
+        }
         else {
             String msg = "A statement description must be of the form "
                     + "<id> <description>" + " with <id> in "
@@ -89,6 +94,8 @@ public class StatementKinds {
             return ArrayDeclaration.ID;
         if (st instanceof DummyStatement)
             return DummyStatement.ID;
+        if (st instanceof RMonitoring)
+            return RMonitoring.ID;
         throw new Error();
     }
 
@@ -1,46 +1,85 @@
 package randoop;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import randoop.util.IMultiMap;
-import randoop.util.ISimpleSet;
-import randoop.util.MultiMap;
+import randoop.util.PrimitiveTypes;
 import randoop.util.Reflection;
-import randoop.util.ReversibleMultiMap;
-import randoop.util.ReversibleSet;
-import randoop.util.SimpleSet;
 
 /**
  * A set of classes. This data structure additionally allows for efficient
  * answers to queries about can-be-used-as (
  * {@link randoop.util.Reflection#canBeUsedAs(Class,Class)}) relationships.
+ *
+ * <p>
+ * IMPLEMENTATION NOTE. The classes in the set are given consecutive IDs, in
+ * the order in which they are added, and sets of classes are stored as bitsets
+ * over these IDs. For every class queried so far, the set keeps a bitset of
+ * the classes in the set that can be used as it. Instead of checking a new
+ * class against every queried class (and a new query against every class in
+ * the set), the classes that a class can possibly be used as are computed
+ * from its supertypes (see <code>supertypeCandidates</code>), and only those
+ * are checked with <code>canBeUsedAs</code>.
  */
 public class SubTypeSet {
 
+    // The classes that have been in the set, by ID. IDs are not reused: a
+    // class removed by undoLastStep keeps its ID.
+    private final List<Class<?>> classes = new ArrayList<Class<?>>();
+    private final Map<Class<?>, Integer> ids = new LinkedHashMap<Class<?>, Integer>();
+
     // The set of classes that have sequences. I.e. membership in this
     // set means that the SequenceCollection has one or more sequences that
     // create a value of the member type.
-    public ISimpleSet<Class<?>> typesWithsequences;
+    private final BitSet typesWithsequences = new BitSet();
+    private final Set<Class<?>> typesWithsequencesSet = new LinkedHashSet<Class<?>>();
+
+    // Array classes in the set. An array can only be used as another array
+    // or as Object.
+    private final BitSet arrayTypesWithsequences = new BitSet();
+
+    // Maps each supertype candidate (see supertypeCandidates) of the classes
+    // in the set to those classes.
+    private final Map<Class<?>, BitSet> typesWithsequencesBySupertype = new LinkedHashMap<Class<?>, BitSet>();
 
-    // Maps a type to the list of subtypes that have sequences.
-    // The list for a given type can be empty, which means that there
+    // Maps a queried type to the subtypes that have sequences.
+    // The set for a given type can be empty, which means that there
     // are no subtypes with sequences for the given type.
-    public IMultiMap<Class<?>, Class<?>> subTypesWithsequences;
+    private final Map<Class<?>, Matches> subTypesWithsequences = new LinkedHashMap<Class<?>, Matches>();
+
+    // The queried types, by the class they are found under when a class is
+    // added (see queryKey), and the queried array types.
+    private final Map<Class<?>, List<Class<?>>> queriesByKey = new LinkedHashMap<Class<?>, List<Class<?>>>();
+    private final List<Class<?>> arrayQueries = new ArrayList<Class<?>>();
+
+    private static final class Matches {
+        final BitSet ids = new BitSet();
+        // The classes in ids, computed when first asked for.
+        Set<Class<?>> classes = null;
+    }
 
     public boolean reversible;
 
+    // For undoLastStep: the IDs of the classes added, in order, and the
+    // number of them at each mark.
+    private final List<Integer> added;
+    private final List<Integer> marks;
+
     public SubTypeSet(boolean reversible) {
+        this.reversible = reversible;
         if (reversible) {
-            this.reversible = true;
-            this.subTypesWithsequences = new ReversibleMultiMap<Class<?>, Class<?>>();
-            this.typesWithsequences = new ReversibleSet<Class<?>>();
+            this.added = new ArrayList<Integer>();
+            this.marks = new ArrayList<Integer>();
         }
         else {
-            this.reversible = false;
-            this.subTypesWithsequences = new MultiMap<Class<?>, Class<?>>();
-            this.typesWithsequences = new SimpleSet<Class<?>>();
+            this.added = null;
+            this.marks = null;
         }
     }
 
@@ -48,51 +87,159 @@ public class SubTypeSet {
         if (!reversible) {
             throw new RuntimeException("Operation not supported.");
         }
-        ((ReversibleMultiMap<Class<?>, Class<?>>) subTypesWithsequences).mark();
-        ((ReversibleSet<Class<?>>) typesWithsequences).mark();
+        marks.add(added.size());
     }
 
     public void undoLastStep() {
         if (!reversible) {
             throw new RuntimeException("Operation not supported.");
         }
-        ((ReversibleMultiMap<Class<?>, Class<?>>) subTypesWithsequences)
-                .undoToLastMark();
-        ((ReversibleSet<Class<?>>) typesWithsequences).undoToLastMark();
+        if (marks.isEmpty())
+            throw new IllegalStateException("No mark to undo to.");
+        int mark = marks.remove(marks.size() - 1);
+        while (added.size() > mark) {
+            remove(added.remove(added.size() - 1));
+        }
     }
 
     public void add(Class<?> c) {
         if (c == null)
             throw new IllegalArgumentException("c cannot be null.");
-        if (typesWithsequences.contains(c))
+        if (typesWithsequencesSet.contains(c))
             return;
-        typesWithsequences.add(c);
+        int id = idOf(c);
+        typesWithsequences.set(id);
+        typesWithsequencesSet.add(c);
+        if (c.isArray())
+            arrayTypesWithsequences.set(id);
+        for (Class<?> s : supertypeCandidates(c)) {
+            BitSet subtypes = typesWithsequencesBySupertype.get(s);
+            if (subtypes == null) {
+                subtypes = new BitSet();
+                typesWithsequencesBySupertype.put(s, subtypes);
+            }
+            subtypes.set(id);
+        }
+        if (reversible)
+            added.add(id);
 
         // Update existing entries.
-        for (Class<?> cls : subTypesWithsequences.keySet()) {
+        for (Class<?> cls : queriesFor(c)) {
             if (Reflection.canBeUsedAs(c, cls)) {
-                if (!subTypesWithsequences.getValues(cls).contains(c))
-                    subTypesWithsequences.add(cls, c);
+                Matches m = subTypesWithsequences.get(cls);
+                m.ids.set(id);
+                m.classes = null;
             }
         }
     }
 
+    // Undoes add(c) for the class with the given ID.
+    private void remove(int id) {
+        Class<?> c = classes.get(id);
+        typesWithsequences.clear(id);
+        typesWithsequencesSet.remove(c);
+        arrayTypesWithsequences.clear(id);
+        for (Class<?> s : supertypeCandidates(c)) {
+            typesWithsequencesBySupertype.get(s).clear(id);
+        }
+        for (Matches m : subTypesWithsequences.values()) {
+            if (m.ids.get(id)) {
+                m.ids.clear(id);
+                m.classes = null;
+            }
+        }
+    }
+
+    private int idOf(Class<?> c) {
+        Integer id = ids.get(c);
+        if (id == null) {
+            id = classes.size();
+            classes.add(c);
+            ids.put(c, id);
+        }
+        return id;
+    }
+
+    // A set of classes that includes every class that c can be used as, plus
+    // possibly a few more: c itself, its superclasses and the interfaces it
+    // implements (those of its boxed type if c is primitive), and Object. An
+    // array can only be used as another array or as Object.
+    private static Set<Class<?>> supertypeCandidates(Class<?> c) {
+        Set<Class<?>> result = new LinkedHashSet<Class<?>>();
+        result.add(c);
+        if (c.equals(void.class))
+            return result;
+        if (!c.isArray())
+            addSupertypes(queryKey(c), result);
+        result.add(Object.class);
+        return result;
+    }
+
+    private static void addSupertypes(Class<?> c, Set<Class<?>> result) {
+        result.add(c);
+        Class<?> superClass = c.getSuperclass();
+        if (superClass != null)
+            addSupertypes(superClass, result);
+        for (Class<?> i : c.getInterfaces()) {
+            if (!result.contains(i))
+                addSupertypes(i, result);
+        }
+    }
+
+    // The class that a query for c is found under: supertypeCandidates(d)
+    // contains queryKey(c) for every d that can be used as a non-array c.
+    private static Class<?> queryKey(Class<?> c) {
+        return c.isPrimitive() && !c.equals(void.class) ? PrimitiveTypes
+                .boxedType(c) : c;
+    }
+
+    // The queried types that c can possibly be used as.
+    private List<Class<?>> queriesFor(Class<?> c) {
+        List<Class<?>> result = new ArrayList<Class<?>>();
+        if (c.isArray()) {
+            result.addAll(arrayQueries);
+            List<Class<?>> objectQueries = queriesByKey.get(Object.class);
+            if (objectQueries != null)
+                result.addAll(objectQueries);
+            return result;
+        }
+        for (Class<?> s : supertypeCandidates(c)) {
+            List<Class<?>> queries = queriesByKey.get(s);
+            if (queries != null)
+                result.addAll(queries);
+        }
+        return result;
+    }
+
     private void addQueryType(Class<?> c) {
         if (c == null)
             throw new IllegalArgumentException("c cannot be null.");
-        Set<Class<?>> keySet = subTypesWithsequences.keySet();
-        if (keySet.contains(c))
+        if (subTypesWithsequences.containsKey(c))
             return;
 
-        Set<Class<?>> classesWithsequencesForC = new LinkedHashSet<Class<?>>();
-        for (Class<?> classWithsequence : typesWithsequences.getElements()) {
-            if (Reflection.canBeUsedAs(classWithsequence, c)) {
-                classesWithsequencesForC.add(classWithsequence);
+        Matches m = new Matches();
+        BitSet candidates;
+        if (c.isArray()) {
+            candidates = arrayTypesWithsequences;
+            arrayQueries.add(c);
+        }
+        else {
+            candidates = typesWithsequencesBySupertype.get(queryKey(c));
+            List<Class<?>> queries = queriesByKey.get(queryKey(c));
+            if (queries == null) {
+                queries = new ArrayList<Class<?>>(1);
+                queriesByKey.put(queryKey(c), queries);
             }
+            queries.add(c);
         }
-        for (Class<?> cls : classesWithsequencesForC) {
-            subTypesWithsequences.add(c, cls);
+        if (candidates != null) {
+            for (int id = candidates.nextSetBit(0); id >= 0; id = candidates
+                    .nextSetBit(id + 1)) {
+                if (Reflection.canBeUsedAs(classes.get(id), c))
+                    m.ids.set(id);
+            }
         }
+        subTypesWithsequences.put(c, m);
     }
 
     /**
@@ -100,10 +247,20 @@ public class SubTypeSet {
      * <code>c</code>.
      */
     public Set<Class<?>> getMatches(Class<?> c) {
-        if (!subTypesWithsequences.keySet().contains(c)) {
+        Matches m = subTypesWithsequences.get(c);
+        if (m == null) {
             addQueryType(c);
+            m = subTypesWithsequences.get(c);
         }
-        return Collections.unmodifiableSet(subTypesWithsequences.getValues(c));
+        if (m.classes == null) {
+            Set<Class<?>> matches = new LinkedHashSet<Class<?>>();
+            for (int id = m.ids.nextSetBit(0); id >= 0; id = m.ids
+                    .nextSetBit(id + 1)) {
+                matches.add(classes.get(id));
+            }
+            m.classes = Collections.unmodifiableSet(matches);
+        }
+        return m.classes;
     }
 
     // TODO create tests for this method.
@@ -111,32 +268,37 @@ public class SubTypeSet {
      * If <code>match==COMPATIBLE_TYPE</code>, returns <code>true</code> if this
      * set contains any classes that can-be-used-as the given class
      * <code>c</code>.
-     * 
+     *
      * <p>
-     * 
+     *
      * Otherwise, returns <code>true</code> if this set contains the given class
      * <code>c</code>
      */
     public boolean containsAssignableType(Class<?> c, Reflection.Match match) {
-        if (!subTypesWithsequences.keySet().contains(c)) {
+        if (!subTypesWithsequences.containsKey(c)) {
             addQueryType(c);
         }
 
-        if (typesWithsequences.contains(c))
+        if (typesWithsequencesSet.contains(c))
             return true;
 
         if (match == Reflection.Match.COMPATIBLE_TYPE) {
-            return !subTypesWithsequences.getValues(c).isEmpty();
+            return !subTypesWithsequences.get(c).ids.isEmpty();
         }
         return false;
     }
 
     public int size() {
-        return typesWithsequences.size();
+        return typesWithsequencesSet.size();
     }
 
     public Set<Class<?>> getElements() {
-        return typesWithsequences.getElements();
+        return typesWithsequencesSet;
+    }
+
+    @Override
+    public String toString() {
+        return typesWithsequencesSet.toString();
     }
 
 }
@@ -94,6 +94,11 @@ public class SequencePrettyPrinter {
             sb.append(indent("public void " + methodName + (count++)
                     + "() throws Throwable {", 2));
             sb.append(Globals.lineSep);
+            if (eseq.workerSeed != null) {
+                sb.append(indent("// Generated by the generation worker with random seed "
+                        + eseq.workerSeed + " (see --worker_seed)", 4));
+                sb.append(Globals.lineSep);
+            }
             // sb.append(Globals.lineSep);
             // sb.append("    if(debug) System.out.println(\"%n"+ this.className
             // + ".test"+ count + "\");");
@@ -113,7 +113,52 @@ public abstract class GenInputsAbstract extends CommandHandler {
     @OptionGroup("Controlling randomness")
     /** The random seed to use in the generation process */
     @Option("The random seed to use in the generation process")
-    public static int randomseed = (int) Randomness.SEED;
+    public static long randomseed = Randomness.SEED;
+
+    // /////////////////////////////////////////////////////////////////
+    @OptionGroup("Parallel generation")
+    /**
+     * Number of generation workers that create and execute sequences
+     * concurrently. All workers share one component manager, and each worker
+     * draws its random choices from its own stream split from --randomseed.
+     * The workers take their steps in rounds (see --worker_round), so that
+     * each worker's sequences depend only on --randomseed, the number of
+     * workers and --worker_round, and a run can be reproduced from them.
+     */
+    @Option("Number of generation workers running at once")
+    public static int workers = 1;
+
+    /**
+     * Number of generation steps each worker takes per round, when the
+     * workers share their components. In a round, every worker creates and
+     * executes its sequences from the components as they were when the round
+     * started; then the new sequences are added to the components, worker by
+     * worker in order. Larger rounds make the workers wait for each other
+     * less often, but let them use each other's sequences later.
+     */
+    @Option("Number of generation steps each worker takes per round")
+    public static int worker_round = 10;
+
+    /**
+     * Give each generation worker its own components, as if it were a
+     * generator of its own, instead of sharing them. The workers then do not
+     * build on each other's sequences, but each worker's sequences depend
+     * only on its random seed, so that it can be replayed with --worker_seed.
+     */
+    @Option("Give each generation worker its own components")
+    public static boolean isolate_workers = false;
+
+    /**
+     * Run a single generation worker whose random stream starts from the
+     * given seed, instead of from --randomseed. The seed of each worker of a
+     * parallel run is printed when generation starts, and recorded in the
+     * JUnit tests the worker generates. For a worker of a run with
+     * --isolate_workers and otherwise the same options, this replays the
+     * worker exactly, including any failing check it found (as far as the
+     * code under test is deterministic).
+     */
+    @Option("Run a single generation worker starting from the given random seed")
+    public static Long worker_seed = null;
 
     // /////////////////////////////////////////////////////////////////
     @OptionGroup("Limiting test generation")
@@ -224,6 +269,29 @@ public abstract class GenInputsAbstract extends CommandHandler {
     @Option("Clear the component set when it gets this big")
     public static int clear = 100000000;
 
+    /**
+     * Maximum number of generated components to keep (0 means no limit). <br />
+     * Unlike <code>--clear</code>, which empties the component set all at
+     * once, this option evicts a few components at a time once the limit is
+     * exceeded: the least recently used components of the types that have the
+     * most components, down to 1/16 below the limit. Seed components and the
+     * last component of each type are never evicted, so every type that could
+     * be created stays available. Components are counted once per type they
+     * provide. The progress display reports how many were evicted. Evicted
+     * components are only freed if <code>--fingerprint_limit</code> is given;
+     * otherwise every sequence is kept for detecting duplicates.
+     */
+    @Option("Keep at most <int> components, evicting the least recently used")
+    public static int component_limit = 0;
+
+    /**
+     * Maximum number of generated components to keep per type (0 means no
+     * limit). When a type exceeds the limit, its least recently used
+     * non-seed components are evicted, down to 1/16 below the limit.
+     */
+    @Option("Keep at most <int> components per type, evicting the least recently used")
+    public static int component_type_limit = 0;
+
     // /////////////////////////////////////////////////////////////////
     @OptionGroup("Creating test oracles")
     /**
@@ -322,6 +390,23 @@ public abstract class GenInputsAbstract extends CommandHandler {
     @Option("Capture all output to stdout and stderr")
     public static boolean capture_output = false;
 
+    /**
+     * Execute sequences in child JVMs instead of in the Randoop process, so
+     * that infinite loops, calls to System.exit and out-of-memory errors in the
+     * code under test do not end the run. The child JVMs are started with the
+     * --mem_megabytes, --agent and --system_props settings, a child that dies
+     * is restarted, and a statement that runs longer than --timeout
+     * milliseconds is reported as a timeout.
+     */
+    @Option("Execute sequences in a pool of child JVMs")
+    public static boolean fork = false;
+
+    @Option("Number of child JVMs to use with --fork (0 means one per worker)")
+    public static int fork_jvms = 0;
+
+    @Option("Number of sequences sent to a child JVM at once with --fork")
+    public static int fork_batch = 16;
+
     // /////////////////////////////////////////////////////////////////
     @OptionGroup("Notifications")
     @Option("Do not display progress update message to console")
@@ -427,6 +512,48 @@ public abstract class GenInputsAbstract extends CommandHandler {
                     "Maximum sequence size must be greater than zero but was "
                             + maxsize);
         }
+
+        if (workers <= 0) {
+            throw new RuntimeException(
+                    "Number of workers must be greater than zero but was "
+                            + workers);
+        }
+
+        if (worker_round <= 0) {
+            throw new RuntimeException(
+                    "Number of steps per round must be greater than zero but was "
+                            + worker_round);
+        }
+
+        if (fork_jvms < 0) {
+            throw new RuntimeException(
+                    "Number of child JVMs must not be negative but was "
+                            + fork_jvms);
+        }
+
+        if (fork_batch <= 0) {
+            throw new RuntimeException(
+                    "Fork batch size must be greater than zero but was "
+                            + fork_batch);
+        }
+
+        if (worker_seed != null && workers > 1) {
+            throw new RuntimeException(
+                    "A worker seed replays a single worker, but the number of workers was "
+                            + workers);
+        }
+
+        if (component_limit < 0) {
+            throw new RuntimeException(
+                    "Component limit must be non-negative but was "
+                            + component_limit);
+        }
+
+        if (component_type_limit < 0) {
+            throw new RuntimeException(
+                    "Per-type component limit must be non-negative but was "
+                            + component_type_limit);
+        }
     }
 
     List<Class<?>> findClassesFromArgs(Options printUsageTo) {
@@ -46,7 +46,6 @@ import randoop.Variable;
 import randoop.experimental.GreedySequenceSimplifier;
 import randoop.util.DefaultReflectionFilter;
 import randoop.util.Log;
-import randoop.util.Randomness;
 import randoop.util.Reflection;
 import randoop.util.ReflectionExecutor;
 import randoop.util.TimeoutExceededException;
@@ -54,6 +53,7 @@ import arbitcheck.CheckStat;
 import arbitcheck.CheckTestFilter;
 import arbitcheck.CheckVisitor;
 import arbitcheck.SequenceUtil;
+import arbitcheck.TestTargeter;
 
 public class GenTests extends GenInputsAbstract {
 
@@ -98,9 +98,12 @@ public class GenTests extends GenInputsAbstract {
 
     public static SimpleLog progress = new SimpleLog(true);
 
+    // TestTargeter's options were already read by arbitcheck.Main, but are
+    // accepted here too.
     private static Options options = new Options(GenTests.class,
             GenInputsAbstract.class, ReflectionExecutor.class,
-            ForwardGenerator.class, AbstractGenerator.class);
+            ForwardGenerator.class, AbstractGenerator.class,
+            TestTargeter.class);
 
     public GenTests() {
         super(command, pitch, commandGrammar, where, summary, notes, input,
@@ -148,8 +151,6 @@ public class GenTests extends GenInputsAbstract {
         // this.
         assumption_class_list.add(ClassCastException.class);
 
-        Randomness.reset(randomseed);
-
         java.security.Policy policy = java.security.Policy.getPolicy();
 
         if (!GenInputsAbstract.noprogressdisplay) {
@@ -393,9 +394,8 @@ public class GenTests extends GenInputsAbstract {
         Sequence newObj = new Sequence().extend(objectConstructor);
         if (GenInputsAbstract.remove_subsequences) {
             List<ExecutableSequence> unique_seqs = new ArrayList<ExecutableSequence>();
-            Set<Sequence> subsumed_seqs = explorer.subsumed_sequences();
             for (ExecutableSequence es : sequences) {
-                if (!subsumed_seqs.contains(es.sequence)
+                if (!explorer.isSubsumed(es.sequence)
                         && !es.sequence.equals(newObj)) {
                     unique_seqs.add(es);
                 }
@@ -433,6 +433,7 @@ public class GenTests extends GenInputsAbstract {
                         failedSequence.sequence, explorer.executionVisitor);
                 ExecutableSequence simplified_sequence = simplifier
                         .simplfy_sequence();
+                simplified_sequence.workerSeed = failedSequence.workerSeed;
                 // System.out.println("Simplified a failed sequence, original length: "
                 // + failedSequence.sequence.size()
                 // + ", length after simplification: " +
@@ -37,11 +37,21 @@ public class ArrayListSimpleList<T> extends SimpleList<T> implements
         return theList.add(element);
     }
 
+    @Override
+    public int depth() {
+        return 1;
+    }
+
     @Override
     public List<T> toJDKList() {
         return new ArrayList<T>(theList);
     }
 
+    @Override
+    public void appendTo(ArrayList<T> result) {
+        result.addAll(theList);
+    }
+
     @Override
     public String toString() {
         return toJDKList().toString();
@@ -0,0 +1,77 @@
+package randoop.util;
+
+import java.util.Arrays;
+
+/**
+ * A Bloom filter over 64-bit fingerprints. Uses a fixed amount of memory,
+ * regardless of how many fingerprints are added; the price is that
+ * <code>mightContain</code> may return true for a fingerprint that was never
+ * added, and does so more often as the filter fills up.
+ */
+public final class BloomFilter {
+
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * Creates a filter with the given number of bits (rounded up to a
+     * multiple of 64) that sets the given number of bits per fingerprint.
+     */
+    public BloomFilter(long numBits, int numHashes) {
+        if (numBits <= 0)
+            throw new IllegalArgumentException("numBits must be positive: "
+                    + numBits);
+        if (numHashes <= 0)
+            throw new IllegalArgumentException("numHashes must be positive: "
+                    + numHashes);
+        this.bits = new long[(int) ((numBits + 63) / 64)];
+        this.numBits = 64L * bits.length;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Adds the fingerprint. Returns true if the filter did not (as far as it
+     * can tell) contain it already.
+     */
+    public boolean add(long fingerprint) {
+        boolean added = false;
+        // Double hashing: the i-th bit is h1 + i*h2.
+        long h1 = fingerprint;
+        long h2 = mix(fingerprint) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes all fingerprints from the filter.
+     */
+    public void clear() {
+        Arrays.fill(bits, 0L);
+    }
+
+    public boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = mix(fingerprint) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,101 @@
+package randoop.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Like {@link ListOfLists}, but over ConcurrentSimpleLists, and live: every
+ * call reads the lists' current snapshots, so the view follows the lists as
+ * they grow without being rebuilt, and without allocating anything per call.
+ * <p>
+ * Since the lists may change between calls, an index obtained from an earlier
+ * <code>size()</code> may no longer be in range if a list has shrunk since;
+ * <code>get</code> then wraps it around the current size. This suits the
+ * random selection the view is used for. The view must not be empty when
+ * <code>get</code> is called.
+ */
+public final class ConcurrentListOfLists<T> extends SimpleList<T> {
+
+    private final List<ConcurrentSimpleList<T>> lists;
+
+    public ConcurrentListOfLists(List<ConcurrentSimpleList<T>> lists) {
+        if (lists == null)
+            throw new IllegalArgumentException("param cannot be null");
+        this.lists = lists;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            size += lists.get(i).size();
+        }
+        return size;
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0)
+            throw new IllegalArgumentException("index must not be negative");
+        T element = find(index);
+        if (element == null) {
+            // A list shrank since the caller read the size.
+            int size = size();
+            if (size == 0)
+                throw new IllegalArgumentException("the lists are empty");
+            element = find(index % size);
+        }
+        return element;
+    }
+
+    // The element at the given index of the current snapshots, or null if
+    // the index is not below their total size. Lists hold no null elements.
+    private T find(int index) {
+        int remaining = index;
+        for (int i = 0; i < lists.size(); i++) {
+            ConcurrentSimpleList.Snapshot<T> s = lists.get(i).snapshot();
+            if (remaining < s.size())
+                return s.get(remaining);
+            remaining -= s.size();
+        }
+        return null;
+    }
+
+    @Override
+    public int depth() {
+        return 2;
+    }
+
+    @Override
+    public void appendTo(ArrayList<T> result) {
+        for (int i = 0; i < lists.size(); i++) {
+            lists.get(i).snapshot().appendTo(result);
+        }
+    }
+
+    @Override
+    public double totalWeight() {
+        double total = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            total += lists.get(i).snapshot().totalWeight();
+        }
+        return total;
+    }
+
+    // Lists that shrank since the caller computed the total weight put the
+    // point past the end, like rounding does, and yield the last element.
+    @Override
+    public T memberAtWeight(double point) {
+        List<ConcurrentSimpleList.Snapshot<T>> snapshots = new ArrayList<ConcurrentSimpleList.Snapshot<T>>(
+                lists.size());
+        for (int i = 0; i < lists.size(); i++) {
+            snapshots.add(lists.get(i).snapshot());
+        }
+        return memberAtWeight(snapshots, point);
+    }
+
+    @Override
+    public String toString() {
+        return toJDKList().toString();
+    }
+}
@@ -0,0 +1,230 @@
+package randoop.util;
+
+import java.util.ArrayList;
+
+/**
+ * A list that many threads can read without locking. Readers work on
+ * snapshots (see {@link #snapshot()}): immutable SimpleLists that share the
+ * list's arrays. Appending an element writes it past the end of every existing
+ * snapshot and then publishes a new, longer snapshot, so appends copy nothing
+ * except when the arrays grow. Removing elements copies the arrays, so that
+ * snapshots taken before the removal are unaffected; <code>removeMarked</code>
+ * removes any number of elements with a single copy.
+ * <p>
+ * Writers synchronize on the list; <code>add</code> and
+ * <code>removeMarked</code> do so themselves.
+ * <p>
+ * A weighted list (whose elements must be WeightedElements) also keeps the
+ * prefix sums of the weights in a Fenwick (binary indexed) tree, so that
+ * {@link Randomness#randomMemberWeighted(SimpleList)} can pick an element of a
+ * snapshot in O(log n) time instead of walking the whole list twice.
+ * Appending to a Fenwick tree only writes the new element's node, so
+ * snapshots can share the tree too. The weight of an element must not change
+ * while it is in the list.
+ */
+public final class ConcurrentSimpleList<T> {
+
+    private final boolean weighted;
+
+    // The elements, weights and Fenwick tree shared by the current snapshot
+    // and possibly older ones. Entries at or beyond the current size are not
+    // part of any snapshot. weights[i] is the weight of element i; tree is
+    // 1-based, and tree[i] is the sum of the weights of elements
+    // i - lowbit(i) .. i - 1. weights and tree are null unless the list is
+    // weighted.
+    private Object[] elements;
+    private double[] weights;
+    private double[] tree;
+
+    private volatile Snapshot<T> snapshot;
+
+    /**
+     * Creates an empty list. If weighted is true, the elements added must be
+     * WeightedElements with positive weights.
+     */
+    public ConcurrentSimpleList(boolean weighted) {
+        this.weighted = weighted;
+        this.elements = new Object[8];
+        if (weighted) {
+            this.weights = new double[8];
+            this.tree = new double[9];
+        }
+        this.snapshot = new Snapshot<T>(elements, 0, tree);
+    }
+
+    /**
+     * The elements of this list at the time of the call. Does not lock.
+     */
+    public Snapshot<T> snapshot() {
+        return snapshot;
+    }
+
+    public int size() {
+        return snapshot.size;
+    }
+
+    public synchronized void add(T element) {
+        double weight = 0;
+        if (weighted) {
+            weight = ((WeightedElement) element).getWeight();
+            if (weight <= 0)
+                throw new IllegalArgumentException("weight was " + weight);
+        }
+        int n = snapshot.size;
+        if (n == elements.length)
+            grow(2 * n);
+        elements[n] = element;
+        if (weighted) {
+            weights[n] = weight;
+            // Node n + 1 covers elements n + 1 - lowbit(n + 1) .. n.
+            int node = n + 1;
+            tree[node] = weight + prefixWeight(tree, n)
+                    - prefixWeight(tree, node - (node & -node));
+        }
+        snapshot = new Snapshot<T>(elements, n + 1, tree);
+    }
+
+    /**
+     * Removes the elements whose indices are marked true in the given array,
+     * which must be as long as the list. The other elements keep their order.
+     * Takes time linear in the size of the list, however many elements are
+     * removed.
+     */
+    public synchronized void removeMarked(boolean[] marked) {
+        int n = snapshot.size;
+        if (marked.length != n)
+            throw new IllegalArgumentException("expected " + n
+                    + " marks but got " + marked.length);
+        Object[] newElements = new Object[elements.length];
+        double[] newWeights = weighted ? new double[weights.length] : null;
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (marked[i])
+                continue;
+            newElements[size] = elements[i];
+            if (weighted)
+                newWeights[size] = weights[i];
+            size++;
+        }
+        elements = newElements;
+        if (weighted) {
+            weights = newWeights;
+            // Build a new tree over the remaining elements, in linear time.
+            double[] newTree = new double[tree.length];
+            for (int node = 1; node <= size; node++) {
+                newTree[node] += weights[node - 1];
+                int parent = node + (node & -node);
+                if (parent <= size)
+                    newTree[parent] += newTree[node];
+            }
+            tree = newTree;
+        }
+        snapshot = new Snapshot<T>(elements, size, tree);
+    }
+
+    // Replaces the arrays by copies of the given capacity.
+    private void grow(int capacity) {
+        int n = snapshot.size;
+        Object[] newElements = new Object[capacity];
+        System.arraycopy(elements, 0, newElements, 0, n);
+        elements = newElements;
+        if (weighted) {
+            double[] newWeights = new double[capacity];
+            System.arraycopy(weights, 0, newWeights, 0, n);
+            weights = newWeights;
+            double[] newTree = new double[capacity + 1];
+            System.arraycopy(tree, 0, newTree, 0, n + 1);
+            tree = newTree;
+        }
+    }
+
+    // The sum of the weights of elements 0 .. count - 1.
+    private static double prefixWeight(double[] tree, int count) {
+        double sum = 0;
+        for (int node = count; node > 0; node -= node & -node) {
+            sum += tree[node];
+        }
+        return sum;
+    }
+
+    /**
+     * The elements of a ConcurrentSimpleList at some point in time.
+     */
+    public static final class Snapshot<T> extends SimpleList<T> {
+
+        private final Object[] elements;
+        private final int size;
+        // Null unless the list is weighted.
+        private final double[] tree;
+
+        Snapshot(Object[] elements, int size, double[] tree) {
+            this.elements = elements;
+            this.size = size;
+            this.tree = tree;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("index: " + index
+                        + ", size: " + size);
+            return (T) elements[index];
+        }
+
+        @Override
+        public int depth() {
+            return 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void appendTo(ArrayList<T> result) {
+            for (int i = 0; i < size; i++) {
+                result.add((T) elements[i]);
+            }
+        }
+
+        // A weighted list answers from the weights it keeps, in O(log n)
+        // time.
+        @Override
+        public double totalWeight() {
+            if (tree == null)
+                return super.totalWeight();
+            return prefixWeight(tree, size);
+        }
+
+        @Override
+        public T memberAtWeight(double point) {
+            if (tree == null)
+                return super.memberAtWeight(point);
+            return get(indexForWeight(point));
+        }
+
+        // The index of the first element at which the running sum of weights
+        // reaches the given point. Points beyond the total yield the last
+        // element.
+        private int indexForWeight(double point) {
+            int pos = 0;
+            double remaining = point;
+            for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+                int next = pos + step;
+                if (next <= size && tree[next] < remaining) {
+                    pos = next;
+                    remaining -= tree[next];
+                }
+            }
+            return Math.min(pos, size - 1);
+        }
+
+        @Override
+        public String toString() {
+            return toJDKList().toString();
+        }
+    }
+}
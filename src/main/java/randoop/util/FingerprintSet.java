@@ -0,0 +1,137 @@
+package randoop.util;
+
+/**
+ * A set of 64-bit fingerprints with bounded memory. Fingerprints are kept
+ * exactly (in a LongHashSet) until there are more than a given number of
+ * them; then the set switches to two Bloom filters that together take the
+ * same amount of memory as the table they replace, and stay that size.
+ * <p>
+ * The filters are generations: fingerprints go into the current one, and
+ * once it holds as many as it can with few false positives, it becomes the
+ * previous one and the old previous one is cleared and becomes current. So
+ * after the switch the set forgets old fingerprints instead of filling up: it
+ * remembers at least the last 4 &times; limit of them (a fingerprint seen
+ * again is remembered anew), and <code>add</code> reports a new fingerprint as
+ * already present about once in a thousand calls, however long the run.
+ */
+public final class FingerprintSet {
+
+    // Bits set per fingerprint once the set is approximate.
+    private static final int BLOOM_HASHES = 7;
+
+    // Bits per fingerprint in a full generation. With 7 hashes, a full
+    // filter has a false positive rate of about 0.07%.
+    private static final int BITS_PER_FINGERPRINT = 16;
+
+    private final int limit;
+
+    // The fingerprints while there are at most limit of them; null after the
+    // switch to the Bloom filters.
+    private LongHashSet exact = new LongHashSet(16);
+
+    // The generation fingerprints are added to, and the one before it (null
+    // until the first generation is full).
+    private BloomFilter current = null;
+    private BloomFilter previous = null;
+
+    // How many fingerprints a generation holds, and how many the current one
+    // holds.
+    private long generationSize;
+    private long currentSize;
+
+    private int size = 0;
+
+    /**
+     * Creates a set that keeps up to the given number of fingerprints exactly.
+     */
+    public FingerprintSet(int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("limit must be positive: "
+                    + limit);
+        this.limit = limit;
+    }
+
+    /**
+     * Adds the fingerprint. Returns true if the set did not already contain
+     * it (as far as the set can tell).
+     */
+    public boolean add(long fingerprint) {
+        if (current != null)
+            return addApproximate(fingerprint);
+        if (!exact.add(fingerprint))
+            return false;
+        size++;
+        if (exact.size() > limit)
+            switchToBloomFilters();
+        return true;
+    }
+
+    private boolean addApproximate(long fingerprint) {
+        boolean seen = previous != null && previous.mightContain(fingerprint);
+        // Also when seen before, so that a fingerprint that keeps coming back
+        // outlives its generation.
+        if (current.add(fingerprint)) {
+            currentSize++;
+            if (currentSize >= generationSize)
+                rotate();
+        }
+        else {
+            seen = true;
+        }
+        if (seen)
+            return false;
+        size++;
+        return true;
+    }
+
+    /**
+     * Whether the set contains the fingerprint (as far as the set can tell,
+     * as for <code>add</code>).
+     */
+    public boolean contains(long fingerprint) {
+        if (current == null)
+            return exact.contains(fingerprint);
+        return current.mightContain(fingerprint) || previous != null
+                && previous.mightContain(fingerprint);
+    }
+
+    /**
+     * The number of fingerprints added.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether the set has switched to Bloom filters.
+     */
+    public boolean isApproximate() {
+        return current != null;
+    }
+
+    private void switchToBloomFilters() {
+        long numBits = 32L * exact.capacity();
+        current = new BloomFilter(numBits, BLOOM_HASHES);
+        generationSize = numBits / BITS_PER_FINGERPRINT;
+        for (long fingerprint : exact.toArray()) {
+            current.add(fingerprint);
+        }
+        currentSize = exact.size();
+        exact = null;
+        if (Log.isLoggingOn())
+            Log.logLine("More than " + limit
+                    + " sequence fingerprints; switched to Bloom filters.");
+    }
+
+    private void rotate() {
+        BloomFilter next = previous;
+        if (next == null)
+            next = new BloomFilter(generationSize * BITS_PER_FINGERPRINT,
+                    BLOOM_HASHES);
+        else
+            next.clear();
+        previous = current;
+        current = next;
+        currentSize = 0;
+    }
+}
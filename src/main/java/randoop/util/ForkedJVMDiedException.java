@@ -0,0 +1,19 @@
+package randoop.util;
+
+/**
+ * Reported as the outcome of a statement during whose execution the child JVM
+ * executing it exited, for example because the code under test called
+ * System.exit or ran out of memory.
+ */
+public final class ForkedJVMDiedException extends RuntimeException {
+
+    private static final long serialVersionUID = -3054370521716734425L;
+
+    public ForkedJVMDiedException() {
+    }
+
+    public ForkedJVMDiedException(String string) {
+        super(string);
+    }
+
+}
@@ -24,6 +24,8 @@ public class ListOfLists<T> extends SimpleList<T> implements Serializable {
 
     private int totalelements;
 
+    private int depth = 1;
+
     @SuppressWarnings({ "varargs", "unchecked" })
     // heap pollution warning
     public ListOfLists(SimpleList<T>... lists) {
@@ -40,6 +42,7 @@ public class ListOfLists<T> extends SimpleList<T> implements Serializable {
                         "All lists should be non-null");
             this.totalelements += l.size();
             this.accumulatedSize[i] = this.totalelements;
+            this.depth = Math.max(this.depth, l.depth() + 1);
         }
     }
 
@@ -56,6 +59,7 @@ public class ListOfLists<T> extends SimpleList<T> implements Serializable {
                         "All lists should be non-null");
             this.totalelements += l.size();
             this.accumulatedSize[i] = this.totalelements;
+            this.depth = Math.max(this.depth, l.depth() + 1);
         }
     }
 
@@ -79,23 +83,46 @@ public class ListOfLists<T> extends SimpleList<T> implements Serializable {
         if (index < 0 || index > this.totalelements - 1)
             throw new IllegalArgumentException(
                     "index must be between 0 and size()-1");
-        int previousListSize = 0;
-        for (int i = 0; i < this.accumulatedSize.length; i++) {
-            if (index < this.accumulatedSize[i])
-                return this.lists.get(i).get(index - previousListSize);
-            previousListSize = this.accumulatedSize[i];
+        // Binary search for the first list whose accumulated size exceeds
+        // index. Empty lists share their accumulated size with the list
+        // before them, so the search must find the first match.
+        int low = 0;
+        int high = this.accumulatedSize.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index < this.accumulatedSize[mid])
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        int previousListSize = (low == 0) ? 0 : this.accumulatedSize[low - 1];
+        return this.lists.get(low).get(index - previousListSize);
+    }
+
+    @Override
+    public int depth() {
+        return this.depth;
+    }
+
+    @Override
+    public void appendTo(ArrayList<T> result) {
+        for (SimpleList<T> l : lists) {
+            l.appendTo(result);
         }
-        throw new RuntimeException(
-                "This point shouldn't be reached (bug in randoop)");
     }
 
     @Override
-    public List<T> toJDKList() {
-        List<T> result = new ArrayList<T>();
+    public double totalWeight() {
+        double total = 0;
         for (SimpleList<T> l : lists) {
-            result.addAll(l.toJDKList());
+            total += l.totalWeight();
         }
-        return result;
+        return total;
+    }
+
+    @Override
+    public T memberAtWeight(double point) {
+        return memberAtWeight(lists, point);
     }
 
     @Override
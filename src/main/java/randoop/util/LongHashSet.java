@@ -0,0 +1,115 @@
+package randoop.util;
+
+/**
+ * A set of long values, stored in a primitive array with open addressing
+ * (linear probing). Uses no memory per element beyond its slot in the table.
+ */
+public final class LongHashSet {
+
+    // Marks an empty slot. Whether the set contains EMPTY itself is recorded
+    // separately.
+    private static final long EMPTY = 0;
+
+    private long[] table;
+    private boolean containsEmpty = false;
+    private int size = 0;
+
+    /**
+     * Creates a set that can hold the given number of elements before
+     * growing.
+     */
+    public LongHashSet(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("negative size: " + expectedSize);
+        int capacity = 16;
+        while (capacity < 2 * expectedSize)
+            capacity *= 2;
+        table = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of slots in the table (which is at least twice the number of
+     * elements).
+     */
+    public int capacity() {
+        return table.length;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY)
+            return containsEmpty;
+        int mask = table.length - 1;
+        for (int i = index(value, mask);; i = (i + 1) & mask) {
+            if (table[i] == value)
+                return true;
+            if (table[i] == EMPTY)
+                return false;
+        }
+    }
+
+    /**
+     * Adds the value to the set. Returns true if the set did not already
+     * contain it.
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmpty)
+                return false;
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        for (int i = index(value, mask);; i = (i + 1) & mask) {
+            if (table[i] == value)
+                return false;
+            if (table[i] == EMPTY) {
+                table[i] = value;
+                size++;
+                // Keep the table at most half full.
+                if (2 * size > table.length)
+                    grow();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the elements of this set, in no particular order.
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int n = 0;
+        if (containsEmpty)
+            result[n++] = EMPTY;
+        for (long v : table) {
+            if (v != EMPTY)
+                result[n++] = v;
+        }
+        return result;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+        for (long v : old) {
+            if (v == EMPTY)
+                continue;
+            int i = index(v, mask);
+            while (table[i] != EMPTY)
+                i = (i + 1) & mask;
+            table[i] = v;
+        }
+    }
+
+    // Fingerprints are already well mixed, but other values may not be.
+    private static int index(long value, int mask) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+}
@@ -2,7 +2,6 @@ package randoop.util;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.List;
 
 public final class OneMoreElementList<T> extends SimpleList<T> implements
         Serializable {
@@ -12,11 +11,13 @@ public final class OneMoreElementList<T> extends SimpleList<T> implements
     public final T lastElement;
     public final SimpleList<T> list;
     public final int size;
+    private final int depth;
 
     public OneMoreElementList(SimpleList<T> list, T extraElement) {
         this.list = list;
         this.lastElement = extraElement;
         this.size = list.size() + 1;
+        this.depth = list.depth() + 1;
     }
 
     @Override
@@ -34,11 +35,31 @@ public final class OneMoreElementList<T> extends SimpleList<T> implements
     }
 
     @Override
-    public List<T> toJDKList() {
-        List<T> result = new ArrayList<T>();
-        result.addAll(list.toJDKList());
-        result.add(lastElement);
-        return result;
+    public int depth() {
+        return depth;
+    }
+
+    // Iterative, so that long chains of extensions don't use up the stack.
+    @SuppressWarnings("unchecked")
+    @Override
+    public void appendTo(ArrayList<T> result) {
+        SimpleList<T> l = this;
+        int chainLength = 0;
+        while (l instanceof OneMoreElementList<?>) {
+            l = ((OneMoreElementList<T>) l).list;
+            chainLength++;
+        }
+        l.appendTo(result);
+        int start = result.size();
+        for (int i = 0; i < chainLength; i++) {
+            result.add(null);
+        }
+        l = this;
+        for (int i = chainLength - 1; i >= 0; i--) {
+            OneMoreElementList<T> one = (OneMoreElementList<T>) l;
+            result.set(start + i, one.lastElement);
+            l = one.list;
+        }
     }
 
     @Override
@@ -0,0 +1,204 @@
+package randoop.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Captures what code under test prints to System.out and System.err, one
+ * thread at a time, without a global lock.
+ *
+ * <p>
+ * The first call to <code>begin</code> replaces System.out and System.err by
+ * streams that look up, on every write, the capture buffer of the writing
+ * thread: if the thread is capturing, the bytes go to its buffer, and
+ * otherwise to the original stream. Between <code>begin</code> and
+ * <code>end</code>, a thread's output is therefore captured while other
+ * threads (other generation workers, the progress display) keep printing
+ * normally.
+ *
+ * <p>
+ * Each thread has one buffer, reused from call to call, that keeps at most
+ * <code>MAX_CAPTURED_BYTES</code> bytes of output; the rest is dropped.
+ */
+public final class OutputCapture {
+
+    /**
+     * The most output kept per capture. Output beyond it is replaced by a
+     * note that it was truncated.
+     */
+    public static final int MAX_CAPTURED_BYTES = 1 << 16;
+
+    private OutputCapture() {
+        throw new IllegalStateException("no instances");
+    }
+
+    /**
+     * A bounded buffer for the output of one thread.
+     */
+    public static final class Buffer extends ByteArrayOutputStream {
+
+        private boolean truncated = false;
+
+        Buffer() {
+            super(256);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (count >= MAX_CAPTURED_BYTES) {
+                truncated = true;
+                return;
+            }
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int room = MAX_CAPTURED_BYTES - count;
+            if (len > room) {
+                truncated = true;
+                len = Math.max(room, 0);
+            }
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            truncated = false;
+        }
+
+        @Override
+        public synchronized String toString() {
+            String output = super.toString();
+            if (truncated)
+                output += "<output truncated after " + MAX_CAPTURED_BYTES
+                        + " bytes>";
+            return output;
+        }
+
+        // The buffer of a thread keeps the capacity it grew to; don't let one
+        // large capture pin that much memory for the rest of the run.
+        void shrink() {
+            if (buf.length > 4096)
+                buf = new byte[256];
+        }
+    }
+
+    // The buffer each thread is writing to, or null if it is not capturing.
+    private static final ThreadLocal<Buffer> target = new ThreadLocal<Buffer>();
+
+    // Each thread's buffer, kept while the thread is not capturing.
+    private static final ThreadLocal<Buffer> ownBuffer = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    // The streams installed as System.out and System.err, and the streams
+    // they replaced. Null until the first capture.
+    private static PrintStream out = null;
+    private static PrintStream err = null;
+    private static PrintStream originalOut = null;
+    private static PrintStream originalErr = null;
+
+    /**
+     * Starts capturing the output of the calling thread.
+     */
+    public static void begin() {
+        ensureInstalled();
+        Buffer buffer = ownBuffer.get();
+        buffer.reset();
+        target.set(buffer);
+    }
+
+    /**
+     * Stops capturing the output of the calling thread, and returns what it
+     * printed since <code>begin</code>.
+     */
+    public static String end() {
+        Buffer buffer = target.get();
+        if (buffer == null)
+            throw new IllegalStateException("not capturing output.");
+        target.set(null);
+        String output = buffer.toString();
+        buffer.reset();
+        buffer.shrink();
+        return output;
+    }
+
+    /**
+     * The buffer the calling thread's output goes to, or null if it is not
+     * capturing. Used to capture, on behalf of a thread, the output of code
+     * that it runs on another thread.
+     */
+    public static Buffer currentTarget() {
+        return target.get();
+    }
+
+    /**
+     * Sends the calling thread's output to the given buffer (obtained from
+     * <code>currentTarget</code> on another thread), or stops capturing it if
+     * the buffer is null.
+     */
+    public static void setTarget(Buffer buffer) {
+        target.set(buffer);
+    }
+
+    // Installs the capturing streams, again if code under test replaced
+    // them. Cheap when they are in place.
+    private static void ensureInstalled() {
+        if (System.out == out && System.err == err && out != null)
+            return;
+        synchronized (OutputCapture.class) {
+            if (out == null) {
+                originalOut = System.out;
+                originalErr = System.err;
+                out = new PrintStream(new Demultiplexer(originalOut), true);
+                err = new PrintStream(new Demultiplexer(originalErr), true);
+            }
+            originalOut.flush();
+            originalErr.flush();
+            System.setOut(out);
+            System.setErr(err);
+        }
+    }
+
+    // Sends each write to the writing thread's buffer, if it has one, and
+    // otherwise to the original stream.
+    private static final class Demultiplexer extends OutputStream {
+
+        private final PrintStream original;
+
+        Demultiplexer(PrintStream original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            Buffer buffer = target.get();
+            if (buffer != null)
+                buffer.write(b);
+            else
+                original.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Buffer buffer = target.get();
+            if (buffer != null)
+                buffer.write(b, off, len);
+            else
+                original.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target.get() == null)
+                original.flush();
+        }
+    }
+}
@@ -105,7 +105,8 @@ public final class PrimitiveTypes {
         return primitiveAndStringToBoxed.containsKey(type);
     }
 
-    public static Map<Class<?>, Boolean> isPrimitiveCached = new LinkedHashMap<Class<?>, Boolean>();
+    public static Map<Class<?>, Boolean> isPrimitiveCached = Collections
+            .synchronizedMap(new LinkedHashMap<Class<?>, Boolean>());
 
     /**
      * Same as c.isPrimitive() but faster if this test is done very frequently
@@ -292,7 +293,8 @@ public final class PrimitiveTypes {
     }
 
     // Used to increase performance of stringLengthOK method.
-    private static Map<String, Boolean> stringLengthOKCached = new LinkedHashMap<String, Boolean>();
+    private static Map<String, Boolean> stringLengthOKCached = Collections
+            .synchronizedMap(new LinkedHashMap<String, Boolean>());
 
     /**
      * Returns true if the given string is deemed to be reasonable (i.e. not too
@@ -56,6 +56,10 @@ public class ProgressDisplay extends Thread {
         b.append("Progress update: sequences generated="
                 + generator.num_sequences_generated);
         b.append(", failing inputs=" + generator.num_failing_sequences);
+        if (GenInputsAbstract.component_limit > 0
+                || GenInputsAbstract.component_type_limit > 0)
+            b.append(", evicted components="
+                    + generator.numEvictedComponents());
         b.append("      (" + new Date() + ")");
         return b.toString();
     }
@@ -4,113 +4,135 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
-import randoop.BugInRandoopException;
-
+/**
+ * A stream of random choices. Every random choice made during generation is
+ * drawn from a stream that is passed to the code making the choice.
+ * (Developer note: do not declare new Random objects; use a stream instead).
+ *
+ * A stream can be split into independent sub-streams (see
+ * <code>split()</code>), for example one per generation worker, so that
+ * workers need not synchronize to make random choices. The sub-streams of a
+ * stream are determined by its seed and the order in which they were split
+ * off, and a sub-stream can be started again by creating a new stream from
+ * its seed (see <code>getSeed()</code>).
+ */
 public final class Randomness {
 
-    private Randomness() {
-        throw new IllegalStateException("no instances");
-    }
-
     public static final long SEED = 0;
 
+    // Increment used to derive the seeds of sub-streams.
+    private static final long SPLIT_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    private final Random random;
+
+    // State from which the seeds of sub-streams are derived.
+    private long splitState;
+
+    private int totalCallsToRandom = 0;
+
+    /**
+     * Creates a stream with the given seed.
+     */
+    public Randomness(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.splitState = seed;
+    }
+
     /**
-     * The random number used any testtime a random choice is made. (Developer
-     * note: do not declare new Random objects; use this one instead).
+     * The seed this stream was created with.
      */
-    static Random random = new Random(SEED);
+    public long getSeed() {
+        return seed;
+    }
 
-    public static void reset(long newSeed) {
-        random = new Random(newSeed);
+    /**
+     * The number of random choices drawn from this stream so far.
+     */
+    public int getTotalCallsToRandom() {
+        return totalCallsToRandom;
     }
 
-    public static int totalCallsToRandom = 0;
+    /**
+     * Returns a new stream, independent of this one. Splitting does not draw
+     * any choices from this stream, and the n-th stream split off a stream
+     * always has the same seed.
+     */
+    public Randomness split() {
+        splitState += SPLIT_GAMMA;
+        long z = splitState;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Randomness(z ^ (z >>> 31));
+    }
 
-    public static boolean nextRandomBool() {
+    private void countCall() {
         totalCallsToRandom++;
         if (Log.isLoggingOn())
             Log.logLine("randoop.util.Randomness: total calls to random: "
                     + totalCallsToRandom);
+    }
+
+    public boolean nextRandomBool() {
+        countCall();
         return random.nextBoolean();
     }
 
     /**
      * Uniformly random int from [0, i)
      */
-    public static int nextRandomInt(int i) {
-        totalCallsToRandom++;
-        if (Log.isLoggingOn())
-            Log.logLine("randoop.util.Randomness: total calls to random: "
-                    + totalCallsToRandom);
+    public int nextRandomInt(int i) {
+        countCall();
         return random.nextInt(i);
     }
 
-    public static <T> T randomMember(List<T> list) {
+    public <T> T randomMember(List<T> list) {
         if (list == null || list.isEmpty())
             throw new IllegalArgumentException("Expected non-empty list");
         return list.get(nextRandomInt(list.size()));
     }
 
-    public static <T> T randomMember(SimpleList<T> list) {
+    public <T> T randomMember(SimpleList<T> list) {
         if (list == null || list.size() == 0)
             throw new IllegalArgumentException("Expected non-empty list");
         return list.get(nextRandomInt(list.size()));
     }
 
-    // Warning: iterates through the entire list twice (once to compute interval
-    // length, once to select element).
-    public static <T extends WeightedElement> T randomMemberWeighted(
+    // Weighted lists, and lists made of them, select in O(log n) time; other
+    // lists are iterated through twice (once to compute interval length, once
+    // to select element). See SimpleList.totalWeight().
+    public <T extends WeightedElement> T randomMemberWeighted(
             SimpleList<T> list) {
 
         // Find interval length.
-        double max = 0;
-        for (int i = 0; i < list.size(); i++) {
-            double weight = list.get(i).getWeight();
-            if (weight <= 0)
-                throw new BugInRandoopException("weight was " + weight);
-            max += weight;
-        }
+        double max = list.totalWeight();
         assert max > 0;
 
         // Select a random point in interval and find its corresponding element.
-        totalCallsToRandom++;
-        if (Log.isLoggingOn())
-            Log.logLine("randoop.util.Randomness: total calls to random: "
-                    + totalCallsToRandom);
-        double randomPoint = Randomness.random.nextDouble() * max;
-        double currentPoint = 0;
-        for (int i = 0; i < list.size(); i++) {
-            currentPoint += list.get(i).getWeight();
-            if (currentPoint >= randomPoint) {
-                return list.get(i);
-            }
-        }
-        throw new BugInRandoopException();
+        countCall();
+        double randomPoint = random.nextDouble() * max;
+        return list.memberAtWeight(randomPoint);
     }
 
-    public static <T> T randomSetMember(Collection<T> set) {
-        int randIndex = Randomness.nextRandomInt(set.size());
+    public <T> T randomSetMember(Collection<T> set) {
+        int randIndex = nextRandomInt(set.size());
         return CollectionsExt.getNthIteratedElement(set, randIndex);
     }
 
-    public static boolean weighedCoinFlip(double trueProb) {
+    public boolean weighedCoinFlip(double trueProb) {
         if (trueProb < 0 || trueProb > 1)
             throw new IllegalArgumentException("arg must be between 0 and 1.");
         double falseProb = 1 - trueProb;
-        totalCallsToRandom++;
-        if (Log.isLoggingOn())
-            Log.logLine("randoop.util.Randomness: total calls to random: "
-                    + totalCallsToRandom);
-        return (Randomness.random.nextDouble() >= falseProb);
+        countCall();
+        return (random.nextDouble() >= falseProb);
     }
 
-    public static boolean randomBoolFromDistribution(double falseProb_,
+    public boolean randomBoolFromDistribution(double falseProb_,
             double trueProb_) {
         double falseProb = falseProb_ / (falseProb_ + trueProb_);
-        totalCallsToRandom++;
-        if (Log.isLoggingOn())
-            Log.logLine("randoop.util.Randomness: total calls to random: "
-                    + totalCallsToRandom);
-        return (Randomness.random.nextDouble() >= falseProb);
+        countCall();
+        return (random.nextDouble() >= falseProb);
     }
 }
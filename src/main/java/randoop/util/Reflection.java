@@ -20,9 +20,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import plume.EntryReader;
-import plume.Pair;
 import plume.UtilMDE;
 import randoop.Globals;
 import randoop.RConstructor;
@@ -267,7 +267,21 @@ public final class Reflection {
         return c2.isAssignableFrom(c1);
     }
 
-    private static Map<Pair<Class<?>, Class<?>>, Boolean> canBeUsedCache = new LinkedHashMap<Pair<Class<?>, Class<?>>, Boolean>();
+    // Cached results of canBeUsedAs(c1, c2), as c1 -> c2 -> result. Lookups
+    // allocate nothing. Both levels have weak keys, so the cache doesn't keep
+    // classes (and their class loaders) alive. Guarded by its own monitor,
+    // because generation workers call canBeUsedAs concurrently.
+    private static final Map<Class<?>, Map<Class<?>, Boolean>> canBeUsedCache = new WeakHashMap<Class<?>, Map<Class<?>, Boolean>>();
+
+    // Each thread's own copy of the results it has looked up, with weak keys
+    // too. Hits are served from it without locking; only misses consult the
+    // shared cache above.
+    private static final ThreadLocal<Map<Class<?>, Map<Class<?>, Boolean>>> canBeUsedLocalCache = new ThreadLocal<Map<Class<?>, Map<Class<?>, Boolean>>>() {
+        @Override
+        protected Map<Class<?>, Map<Class<?>, Boolean>> initialValue() {
+            return new WeakHashMap<Class<?>, Map<Class<?>, Boolean>>();
+        }
+    };
 
     public static long num_times_canBeUsedAs_called = 0;
 
@@ -285,18 +299,36 @@ public final class Reflection {
             return true;
         if (c1.equals(void.class) || c2.equals(void.class))
             return false;
-        Pair<Class<?>, Class<?>> classPair = new Pair<Class<?>, Class<?>>(c1,
-                c2);
-        Boolean cachedRetVal = canBeUsedCache.get(classPair);
-        boolean retval;
+        Map<Class<?>, Boolean> localCache = cacheFor(
+                canBeUsedLocalCache.get(), c1);
+        Boolean cachedRetVal = localCache.get(c2);
+        if (cachedRetVal != null)
+            return cachedRetVal;
+        Map<Class<?>, Boolean> c1Cache;
+        synchronized (canBeUsedCache) {
+            c1Cache = cacheFor(canBeUsedCache, c1);
+            cachedRetVal = c1Cache.get(c2);
+        }
         if (cachedRetVal == null) {
-            retval = canBeUsedAs0(c1, c2);
-            canBeUsedCache.put(classPair, retval);
+            // Computed outside the lock; two threads may both compute it.
+            cachedRetVal = canBeUsedAs0(c1, c2);
+            synchronized (canBeUsedCache) {
+                c1Cache.put(c2, cachedRetVal);
+            }
         }
-        else {
-            retval = cachedRetVal;
+        localCache.put(c2, cachedRetVal);
+        return cachedRetVal;
+    }
+
+    // The results cached for c1 in the given cache, added if missing.
+    private static Map<Class<?>, Boolean> cacheFor(
+            Map<Class<?>, Map<Class<?>, Boolean>> cache, Class<?> c1) {
+        Map<Class<?>, Boolean> c1Cache = cache.get(c1);
+        if (c1Cache == null) {
+            c1Cache = new WeakHashMap<Class<?>, Boolean>();
+            cache.put(c1, c1Cache);
         }
-        return retval;
+        return c1Cache;
     }
 
     // TODO testclasses array code (third if clause)
@@ -561,7 +593,8 @@ public final class Reflection {
         }
     }
 
-    private static Map<Class<?>, Boolean> cached_isVisible = new LinkedHashMap<Class<?>, Boolean>();
+    private static Map<Class<?>, Boolean> cached_isVisible = Collections
+            .synchronizedMap(new LinkedHashMap<Class<?>, Boolean>());
 
     public static boolean isVisible(Class<?> c) {
 
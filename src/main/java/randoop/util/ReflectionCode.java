@@ -25,38 +25,44 @@ public abstract class ReflectionCode {
             IllegalAccessException, InvocationTargetException,
             NotCaughtIllegalStateException {
 
-        // The following few lines attempt to find out if there is a
-        // RandoopSecurityManager installed, and if so, record its status.
-        RandoopSecurityManager randoopsecurity = null;
-        RandoopSecurityManager.Status oldStatus = null;
-
-        SecurityManager security = System.getSecurityManager();
-        if (security != null && security instanceof RandoopSecurityManager) {
-            randoopsecurity = (RandoopSecurityManager) security;
-            oldStatus = randoopsecurity.status;
-            randoopsecurity.status = Status.ON;
-        }
-
-        // At this point, this is the state of the method.
-        assert Util.iff(security != null
-                && security instanceof RandoopSecurityManager,
-                randoopsecurity != null && oldStatus != null);
-
+        RandoopSecurityManager.Status oldStatus = turnOnSecurityManager();
         try {
 
             runReflectionCodeRaw();
 
         }
         finally {
+            restoreSecurityManager(oldStatus);
+        }
+    }
 
-            // Before exiting, restore the RandoopSecurityManager's status to
-            // its
-            // original status, if such a manager was installed.
-            if (randoopsecurity != null) {
-                assert oldStatus != null;
-                randoopsecurity.status = oldStatus;
-            }
+    /**
+     * If a RandoopSecurityManager is installed, sets its status to ON and
+     * returns its previous status. Otherwise returns null.
+     */
+    static RandoopSecurityManager.Status turnOnSecurityManager() {
+        SecurityManager security = System.getSecurityManager();
+        if (security != null && security instanceof RandoopSecurityManager) {
+            RandoopSecurityManager randoopsecurity = (RandoopSecurityManager) security;
+            RandoopSecurityManager.Status oldStatus = randoopsecurity.status;
+            randoopsecurity.status = Status.ON;
+            assert oldStatus != null;
+            return oldStatus;
         }
+        return null;
+    }
+
+    /**
+     * Restores the status of the installed RandoopSecurityManager to the
+     * given status, returned by turnOnSecurityManager(). Does nothing if the
+     * status is null.
+     */
+    static void restoreSecurityManager(RandoopSecurityManager.Status oldStatus) {
+        if (oldStatus == null)
+            return;
+        SecurityManager security = System.getSecurityManager();
+        if (security instanceof RandoopSecurityManager)
+            ((RandoopSecurityManager) security).status = oldStatus;
     }
 
     /**
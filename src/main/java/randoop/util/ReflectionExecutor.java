@@ -1,6 +1,12 @@
 package randoop.util;
 
 import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import plume.Option;
 import plume.OptionGroup;
@@ -9,9 +15,10 @@ import plume.UtilMDE;
 /**
  * Executes the code of a ReflectionCode object.
  * 
- * This class maintains an "executor" thread. Code is executed on that thread.
- * If the code takes longer than the specified timeout, the thread is killed and
- * a TimeoutExceededException exception is reported.
+ * This class maintains a pool of "executor" threads. Code is executed on one
+ * of those threads, which is reused for later calls. If the code takes longer
+ * than the specified timeout, the thread is killed (and dropped from the pool)
+ * and a TimeoutExceededException exception is reported.
  * 
  */
 public final class ReflectionExecutor {
@@ -21,8 +28,8 @@ public final class ReflectionExecutor {
      * to execution of code under test that results in an infinite loop. With
      * this option, Randoop executes each test in a separate thread and kills
      * tests that take too long to finish. Tests killed in this manner are not
-     * reported to the user. The downside is a BIG (order-of-magnitude) decrease
-     * in generation speed.
+     * reported to the user. Executor threads are reused across tests, so the
+     * cost over unthreaded execution is a thread handoff per call.
      */
     @OptionGroup("Threading and timeouts")
     @Option("Execute each test in a separate thread, with timeout")
@@ -36,27 +43,32 @@ public final class ReflectionExecutor {
     @Option("Maximum number of milliseconds a test may run. Only meaningful with --usethreads")
     public static int timeout = 5000;
 
-    // Execution statistics.
-    private static long normal_exec_accum = 0;
-    private static int normal_exec_count = 0;
-    private static long excep_exec_accum = 0;
-    private static int excep_exec_count = 0;
+    // Idle executor threads. A thread is taken from here for each call and
+    // put back once the call finishes; threads whose call timed out are
+    // stopped and never put back.
+    private static final ConcurrentLinkedQueue<RunnerThread> idleRunners = new ConcurrentLinkedQueue<RunnerThread>();
+
+    // Execution statistics. Updated by every generation worker, hence atomic.
+    private static final AtomicLong normal_exec_accum = new AtomicLong();
+    private static final AtomicInteger normal_exec_count = new AtomicInteger();
+    private static final AtomicLong excep_exec_accum = new AtomicLong();
+    private static final AtomicInteger excep_exec_count = new AtomicInteger();
 
     public static int normalExecs() {
-        return normal_exec_count;
+        return normal_exec_count.get();
     }
 
     public static int excepExecs() {
-        return excep_exec_count;
+        return excep_exec_count.get();
     }
 
     public static double normalExecAvgMillis() {
-        return ((normal_exec_accum / (double) normal_exec_count) / Math.pow(10,
+        return ((normal_exec_accum.get() / (double) normal_exec_count.get()) / Math.pow(10,
                 6));
     }
 
     public static double excepExecAvgMillis() {
-        return ((excep_exec_accum / (double) excep_exec_count) / Math
+        return ((excep_exec_accum.get() / (double) excep_exec_count.get()) / Math
                 .pow(10, 6));
     }
 
@@ -74,16 +86,10 @@ public final class ReflectionExecutor {
         long duration = System.nanoTime() - start;
 
         if (ret == null) {
-            // Add duration to running average for normal execution.
-            normal_exec_accum += duration;
-            assert normal_exec_accum > 0; // check no overflow.
-            normal_exec_count++;
+            recordNormalExecution(duration);
         }
         else {
-            // Add duration to running average for exceptional execution.
-            excep_exec_accum += duration;
-            assert excep_exec_accum > 0; // check no overflow.
-            excep_exec_count++;
+            recordExceptionalExecution(duration);
         }
 
         return ret;
@@ -102,18 +108,20 @@ public final class ReflectionExecutor {
     private static Throwable executeReflectionCodeThreaded(ReflectionCode code,
             PrintStream out) {
 
-        RunnerThread runnerThread = new RunnerThread(null);
-        runnerThread.setup(code);
-
-        try {
-
-            // Start the test.
+        RunnerThread runnerThread = idleRunners.poll();
+        // A pooled thread can still die while idle, for example if the code
+        // under test got hold of it and stopped it; skip those.
+        while (runnerThread != null && !runnerThread.isAlive())
+            runnerThread = idleRunners.poll();
+        if (runnerThread == null) {
+            runnerThread = new RunnerThread(null);
             runnerThread.start();
+        }
 
-            // If test doesn't finish in time, suspend it.
-            runnerThread.join(timeout);
+        try {
 
-            if (!runnerThread.runFinished) {
+            // Run the test. If test doesn't finish in time, kill the thread.
+            if (!runnerThread.execute(code, timeout)) {
                 if (Log.isLoggingOn()) {
                     Log.log("Exceeded max wait: aborting test input.");
                 }
@@ -125,7 +133,13 @@ public final class ReflectionExecutor {
                 return new TimeoutExceededException();
             }
 
-            return runnerThread.exceptionThrown;
+            Throwable thrown = runnerThread.exceptionThrown;
+            ReflectionCode.NotCaughtIllegalStateException error = runnerThread.internalError;
+            idleRunners.add(runnerThread);
+            if (error != null) {
+                throw error;
+            }
+            return thrown;
 
         }
         catch (java.lang.InterruptedException e) {
@@ -174,6 +188,120 @@ public final class ReflectionExecutor {
         }
     }
 
+    /**
+     * Whether statements may call code under test directly, with
+     * invokeDirectly and newInstanceDirectly, instead of wrapping each call in
+     * a ReflectionCode. True unless calls are run on executor threads.
+     */
+    public static boolean canExecuteDirectly() {
+        return !usethreads;
+    }
+
+    /**
+     * Calls the given method on the calling thread, like
+     * <code>executeReflectionCode(new MethodReflectionCode(method, receiver,
+     * args), out)</code> without threads, but without allocating a
+     * ReflectionCode. The method must already be accessible. Returns the
+     * method's return value; if it throws an exception, the exception is
+     * returned through <code>DirectCallException</code>.
+     */
+    public static Object invokeDirectly(Method method, Object receiver,
+            Object[] args, PrintStream out) throws DirectCallException {
+        long start = System.nanoTime();
+        RandoopSecurityManager.Status oldStatus = ReflectionCode
+                .turnOnSecurityManager();
+        Object retval;
+        try {
+            retval = method.invoke(receiver, args);
+        }
+        catch (Throwable e) {
+            throw directCallFailed(e, start, out);
+        }
+        finally {
+            ReflectionCode.restoreSecurityManager(oldStatus);
+        }
+        if (receiver == null && !Modifier.isStatic(method.getModifiers()))
+            throw new ReflectionCode.NotCaughtIllegalStateException(
+                    "receiver was null - expected NPE from call to: " + method);
+        recordNormalExecution(System.nanoTime() - start);
+        return retval;
+    }
+
+    /**
+     * Like invokeDirectly, for a constructor.
+     */
+    public static Object newInstanceDirectly(Constructor<?> constructor,
+            Object[] args, PrintStream out) throws DirectCallException {
+        long start = System.nanoTime();
+        RandoopSecurityManager.Status oldStatus = ReflectionCode
+                .turnOnSecurityManager();
+        Object retval;
+        try {
+            retval = constructor.newInstance(args);
+        }
+        catch (Throwable e) {
+            throw directCallFailed(e, start, out);
+        }
+        finally {
+            ReflectionCode.restoreSecurityManager(oldStatus);
+        }
+        recordNormalExecution(System.nanoTime() - start);
+        return retval;
+    }
+
+    /**
+     * Thrown by invokeDirectly and newInstanceDirectly when the code under
+     * test throws an exception, which is the cause.
+     */
+    public static final class DirectCallException extends Exception {
+        private static final long serialVersionUID = -2411437470346582214L;
+
+        DirectCallException(Throwable cause) {
+            super(null, cause);
+        }
+
+        // The stack trace of this wrapper is never looked at.
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    // Adds duration to running average for normal execution.
+    private static void recordNormalExecution(long duration) {
+        long accum = normal_exec_accum.addAndGet(duration);
+        assert accum > 0; // check no overflow.
+        normal_exec_count.incrementAndGet();
+    }
+
+    // Adds duration to running average for exceptional execution.
+    private static void recordExceptionalExecution(long duration) {
+        long accum = excep_exec_accum.addAndGet(duration);
+        assert accum > 0; // check no overflow.
+        excep_exec_count.incrementAndGet();
+    }
+
+    // Handles an exception thrown by a direct call the way
+    // executeReflectionCodeUnThreaded does.
+    private static DirectCallException directCallFailed(Throwable e,
+            long start, PrintStream out) {
+        if (e instanceof ThreadDeath) // can't stop these guys
+            throw (ThreadDeath) e;
+        Throwable orig_e = null;
+        if (e instanceof java.lang.reflect.InvocationTargetException) {
+            orig_e = e;
+            e = e.getCause();
+        }
+        if (out != null) {
+            printExceptionDetails(e, out);
+            if (orig_e != null) {
+                out.println("Original exception: " + orig_e);
+            }
+        }
+        recordExceptionalExecution(System.nanoTime() - start);
+        return new DirectCallException(e);
+    }
+
     private static void printExceptionDetails(Throwable e, PrintStream out) {
         out.println("Exception thrown:" + e.toString());
         out.println("Message: " + e.getMessage());
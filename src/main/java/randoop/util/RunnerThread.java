@@ -1,71 +1,139 @@
 package randoop.util;
 
+/**
+ * A long-lived thread that executes ReflectionCode objects handed to it, one
+ * at a time. After a call finishes, the thread waits for the next one, so a
+ * single thread can serve many calls. A thread whose call exceeded its timeout
+ * is stopped and must not be used again.
+ */
 public class RunnerThread extends Thread {
 
-    // Fields assigned when calling setup(..)
+    // Guards the fields below. We don't use the thread's own monitor
+    // because Thread.join and the code under test may use it too.
+    private final Object lock = new Object();
+
+    // The code to run next; null while the thread is idle.
     private ReflectionCode code;
 
-    // Fields assigned when calling run()
+    // Where the output of the code goes: the capture buffer of the thread
+    // that handed it over, if that thread is capturing its output.
+    private OutputCapture.Buffer outputTarget;
+
+    // Fields assigned when a call finishes.
     public boolean runFinished;
     public Throwable exceptionThrown;
 
-    // The state of the thread.
-    private NextCallMustBe state;
+    // Set if the call failed because of a bug in randoop code.
+    ReflectionCode.NotCaughtIllegalStateException internalError;
 
-    private enum NextCallMustBe {
-        SETUP, RUN
-    }
+    // The context class loader the thread started with, restored after each
+    // call in case the code under test changed it.
+    private final ClassLoader initialContextClassLoader;
 
     /**
-     * Create a new runner thread.
-     * 
+     * Create a new runner thread. The thread must be started before it is
+     * given any code to execute.
+     *
      * @param threadGroup
      */
     public RunnerThread(ThreadGroup threadGroup) {
-        super(threadGroup, "");
+        super(threadGroup, "RunnerThread");
         this.code = null;
         this.runFinished = false;
         this.exceptionThrown = null;
-        this.state = NextCallMustBe.SETUP;
+        this.internalError = null;
+        this.initialContextClassLoader = getContextClassLoader();
+        this.setDaemon(true);
         this.setUncaughtExceptionHandler(RandoopUncaughtRunnerThreadExceptionHandler
                 .getHandler());
     }
 
-    public void setup(ReflectionCode code) {
-        if (state != NextCallMustBe.SETUP)
-            throw new IllegalArgumentException();
+    /**
+     * Hands the given code to this thread and waits at most timeoutMillis
+     * milliseconds for it to finish. Returns true if the code finished in time,
+     * in which case exceptionThrown and internalError describe its outcome.
+     */
+    public boolean execute(ReflectionCode code, long timeoutMillis)
+            throws InterruptedException {
         if (code == null)
             throw new IllegalArgumentException("code cannot be null.");
-        this.code = code;
-        this.state = NextCallMustBe.RUN;
+        synchronized (lock) {
+            if (this.code != null)
+                throw new IllegalStateException("runner thread is busy.");
+            this.code = code;
+            this.outputTarget = OutputCapture.currentTarget();
+            this.runFinished = false;
+            this.exceptionThrown = null;
+            this.internalError = null;
+            lock.notifyAll();
+
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!runFinished) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                lock.wait(remaining);
+            }
+            return true;
+        }
     }
 
     @Override
     public final void run() {
-        if (state != NextCallMustBe.RUN)
-            throw new IllegalArgumentException();
-        runFinished = false;
-        executeReflectionCode();
-        runFinished = true;
-        this.state = NextCallMustBe.SETUP;
-    }
+        while (true) {
+            ReflectionCode next;
+            OutputCapture.Buffer nextOutputTarget;
+            synchronized (lock) {
+                while (code == null) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        // Stray interrupts, from threads the code under test
+                        // started, must not end the thread: it may already be
+                        // back in the pool.
+                    }
+                }
+                next = code;
+                nextOutputTarget = outputTarget;
+            }
 
-    private void executeReflectionCode() {
-        try {
-            code.runReflectionCode();
-            // exceptionThrown remains null.
-        }
-        catch (ThreadDeath e) {// can't stop these guys
-            throw e;
-        }
-        catch (ReflectionCode.NotCaughtIllegalStateException e) {// bug in
-                                                                 // randoop code
-            throw e;
-        }
-        catch (Throwable e) {
-            if (e instanceof java.lang.reflect.InvocationTargetException)
-                e = e.getCause();
-            exceptionThrown = e;
+            Throwable thrown = null;
+            ReflectionCode.NotCaughtIllegalStateException error = null;
+            OutputCapture.setTarget(nextOutputTarget);
+            try {
+                next.runReflectionCode();
+                // thrown remains null.
+            }
+            catch (ThreadDeath e) {// can't stop these guys
+                throw e;
+            }
+            catch (ReflectionCode.NotCaughtIllegalStateException e) {// bug in
+                                                                     // randoop
+                                                                     // code
+                error = e;
+            }
+            catch (Throwable e) {
+                if (e instanceof java.lang.reflect.InvocationTargetException)
+                    e = e.getCause();
+                thrown = e;
+            }
+            finally {
+                OutputCapture.setTarget(null);
+                // Don't let the call leave state behind for the next one. An
+                // interrupt flag left set would make the next wait fail.
+                Thread.interrupted();
+                setContextClassLoader(initialContextClassLoader);
+            }
+
+            synchronized (lock) {
+                code = null;
+                outputTarget = null;
+                exceptionThrown = thrown;
+                internalError = error;
+                runFinished = true;
+                lock.notifyAll();
+            }
         }
     }
 }
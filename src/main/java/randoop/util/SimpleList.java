@@ -1,7 +1,10 @@
 package randoop.util;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import randoop.BugInRandoopException;
+
 /**
  * List implementation used by Randoop to store the sequence of
  * <code>Statement</code>s making up a Sequence.
@@ -44,6 +47,12 @@ import java.util.List;
  * statements plus the new statement in a OneMoreElementList, which takes up
  * only 2 references in memory (and constant creation time).
  * <p>
+ * The price is that <code>get</code> walks the nested lists, so its cost grows
+ * with the nesting depth. Sequence therefore copies a list whose
+ * {@link #depth()} exceeds a threshold into a flat ArrayListSimpleList, which
+ * bounds the cost of <code>get</code> while keeping the copying amortized over
+ * many extensions.
+ * <p>
  */
 public abstract class SimpleList<T> {
 
@@ -51,6 +60,12 @@ public abstract class SimpleList<T> {
 
     public abstract T get(int index);
 
+    /**
+     * The number of nested lists that <code>get</code> may have to go
+     * through; 1 for a flat list.
+     */
+    public abstract int depth();
+
     public final boolean isEmpty() {
         return size() == 0;
     }
@@ -58,5 +73,70 @@ public abstract class SimpleList<T> {
     /**
      * Returns a java.util.List version of this list.
      */
-    public abstract List<T> toJDKList();
+    public List<T> toJDKList() {
+        ArrayList<T> result = new ArrayList<T>(size());
+        appendTo(result);
+        return result;
+    }
+
+    /**
+     * Appends the elements of this list to the given list, in order.
+     */
+    public abstract void appendTo(ArrayList<T> result);
+
+    /**
+     * The sum of the weights of the elements, which must be WeightedElements
+     * with positive weights. This iterates through the list; lists that can
+     * do better override it.
+     */
+    public double totalWeight() {
+        double total = 0;
+        for (int i = 0; i < size(); i++) {
+            double weight = ((WeightedElement) get(i)).getWeight();
+            if (weight <= 0)
+                throw new BugInRandoopException("weight was " + weight);
+            total += weight;
+        }
+        return total;
+    }
+
+    /**
+     * The first element at which the running sum of the elements' weights
+     * reaches the given point, which should be between 0 and
+     * totalWeight(). Points beyond the total (e.g. due to rounding) yield the
+     * last element. The list must not be empty.
+     */
+    public T memberAtWeight(double point) {
+        double currentPoint = 0;
+        for (int i = 0; i < size(); i++) {
+            currentPoint += ((WeightedElement) get(i)).getWeight();
+            if (currentPoint >= point) {
+                return get(i);
+            }
+        }
+        // Rounding put the point past the end.
+        if (!isEmpty())
+            return get(size() - 1);
+        throw new BugInRandoopException();
+    }
+
+    // memberAtWeight for a list made of the given parts, in order.
+    static <T> T memberAtWeight(List<? extends SimpleList<T>> parts,
+            double point) {
+        double currentPoint = 0;
+        SimpleList<T> lastNonEmpty = null;
+        for (SimpleList<T> l : parts) {
+            if (l.isEmpty())
+                continue;
+            double weight = l.totalWeight();
+            if (currentPoint + weight >= point)
+                return l.memberAtWeight(point - currentPoint);
+            currentPoint += weight;
+            lastNonEmpty = l;
+        }
+        // Rounding put the point past the end.
+        if (lastNonEmpty != null)
+            return lastNonEmpty.get(lastNonEmpty.size() - 1);
+        throw new BugInRandoopException();
+    }
 }
@@ -0,0 +1,33 @@
+package arbitcheck.examples.bitset;
+
+import arbitcheck.Check;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * A property whose parameter type only a private method mentions, so that the
+ * type is not in the class tree built from the classpath.
+ */
+public class BitSetRange {
+    private int from = 0;
+    private int to = 0;
+
+    public void setRange(int from, int to) {
+        if (from < 0 || to < from)
+            throw new IllegalArgumentException();
+        this.from = from;
+        this.to = to;
+    }
+
+    public int getLength() {
+        return to - from;
+    }
+
+    @Check
+    private void prop_SetRange(BitSet bits) {
+        bits.clear();
+        bits.set(from, to);
+        assertEquals(getLength(), bits.cardinality());
+    }
+}